@@ -0,0 +1,53 @@
+// Placeholder in a seat whose player is gone but may come back with their
+// resume token, e.g. in a match recovered from the journal after a
+// restart. It ignores everything the session sends; GameSession.resume()
+// swaps the real player in.
+public class AbsentPlayer extends PlayerHandler {
+    public AbsentPlayer() {
+        super(new NoConnection(), "Absent");
+    }
+
+    @Override
+    public void sendTurn(boolean yourTurn) {
+    }
+
+    @Override
+    public void sendGameOver(char result, String text) {
+    }
+
+    @Override
+    public void sendMove(char moveMark, int row, int col, int boardSize) {
+    }
+
+    @Override
+    public void sendReset() {
+    }
+
+    @Override
+    public void sendBoard(int size, int winLength) {
+    }
+
+    @Override
+    public void sendAssignment() {
+    }
+
+    @Override
+    public void sendChat(String text) {
+    }
+
+    @Override
+    public void sendHint(int row, int col) {
+    }
+
+    @Override
+    public void sendToken(String token) {
+    }
+
+    @Override
+    public void sendState(Board board, char turn) {
+    }
+
+    @Override
+    public void flush() {
+    }
+}
\ No newline at end of file
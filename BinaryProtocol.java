@@ -0,0 +1,89 @@
+// Compact binary alternative to the text protocol. A client opts in by
+// sending MAGIC as the very first byte; every message after that, in both
+// directions, is a fixed 8-byte frame:
+//
+//   0: opcode   1: arg   2-3: cell index (or payload length)   4-7: match id
+//
+// NAME, CHAT, GAME_OVER, TOKEN, STATE, WATCH and REDIRECT carry UTF-8 text after the header
+// and use the cell field as its length. Text clients never start with MAGIC because
+// their first byte is the 'N' of "NAME".
+public final class BinaryProtocol {
+    public static final int MAGIC = 0xB1;
+    public static final int HEADER_SIZE = 8;
+    public static final int MAX_PAYLOAD = 1024;
+
+    // Client to server
+    public static final int NAME = 1;       // payload: player name, optionally followed by " RESUME <token>"
+    public static final int RESTART = 4;
+    public static final int WATCH = 6;      // payload: match id in decimal; spectate that match
+    public static final int RANK = 7;       // own rating and rank, answered as CHAT
+    public static final int TOP = 8;        // cell: how many (0 for the default); leaderboard as CHAT lines
+
+    // Both directions
+    public static final int MOVE = 2;       // cell; server adds the mover's mark as arg
+    public static final int CHAT = 3;       // payload: chat text
+    public static final int HINT = 5;       // client asks for a move suggestion; server answers with cell
+    public static final int PING = 9;       // answered with PONG; either side may send it to check the other is there
+    public static final int PONG = 10;
+
+    // Server to client
+    public static final int BOARD = 16;     // arg: win length, cell: board size
+    public static final int ASSIGN = 17;    // arg: your mark
+    public static final int TURN = 18;      // arg: 1 for your turn, 0 for the opponent's
+    public static final int GAME_OVER = 19; // arg: winning mark, 'D' for draw or '-' if abandoned; payload: text
+    public static final int RESET = 20;
+    public static final int TOKEN = 21;     // payload: resume token for this seat
+    public static final int STATE = 22;     // arg: mark to move or '-'; payload: one of '.', 'X', 'O' per cell
+    public static final int REDIRECT = 23;  // payload: host:port to reconnect to and repeat the first message
+
+    private BinaryProtocol() {
+    }
+
+    public static boolean hasPayload(int opcode) {
+        return opcode == NAME || opcode == CHAT || opcode == GAME_OVER
+                || opcode == TOKEN || opcode == STATE || opcode == WATCH || opcode == REDIRECT;
+    }
+
+    public static void writeFrame(OutputBuffer out, int opcode, int arg, int cell, int matchId) {
+        out.writeByte(opcode);
+        out.writeByte(arg);
+        out.writeShort(cell);
+        out.writeInt(matchId);
+    }
+
+    public static void writeTextFrame(OutputBuffer out, int opcode, int arg, int matchId, String text) {
+        out.writeByte(opcode);
+        out.writeByte(arg);
+        int lengthPosition = out.size();
+        out.writeShort(0);
+        out.writeInt(matchId);
+        int start = out.size();
+        out.writeUtf8(text);
+        int length = out.size() - start;
+        if (length > MAX_PAYLOAD) {
+            // Never emit a frame the other side would reject; drop the text instead
+            out.truncate(start);
+            length = 0;
+        }
+        out.patchShort(lengthPosition, length);
+    }
+
+    // Header fields of the frame starting at offset
+
+    public static int opcode(byte[] data, int offset) {
+        return data[offset] & 0xFF;
+    }
+
+    public static int arg(byte[] data, int offset) {
+        return data[offset + 1] & 0xFF;
+    }
+
+    public static int cell(byte[] data, int offset) {
+        return ((data[offset + 2] & 0xFF) << 8) | (data[offset + 3] & 0xFF);
+    }
+
+    public static int matchId(byte[] data, int offset) {
+        return ((data[offset + 4] & 0xFF) << 24) | ((data[offset + 5] & 0xFF) << 16)
+                | ((data[offset + 6] & 0xFF) << 8) | (data[offset + 7] & 0xFF);
+    }
+}
\ No newline at end of file
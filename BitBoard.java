@@ -0,0 +1,70 @@
+// Compact 3x3 board shared by server and client. A whole board is one int:
+// bits 0-8 hold X's cells and bits 9-17 hold O's, with cell = row * 3 + col.
+public final class BitBoard {
+    public static final int EMPTY = 0;
+    public static final int CELLS = 9;
+
+    private static final int FULL = 0x1FF;
+    private static final int O_SHIFT = 9;
+
+    // Rows, columns and both diagonals as cell masks
+    private static final int[] LINES = {
+            0x007, 0x038, 0x1C0, // rows
+            0x049, 0x092, 0x124, // columns
+            0x111, 0x054         // diagonals
+    };
+
+    private BitBoard() {
+    }
+
+    public static int cell(int row, int col) {
+        return row * 3 + col;
+    }
+
+    public static boolean inBounds(int row, int col) {
+        return row >= 0 && row < 3 && col >= 0 && col < 3;
+    }
+
+    public static int marks(int board, char mark) {
+        return mark == 'X' ? board & FULL : (board >>> O_SHIFT) & FULL;
+    }
+
+    public static boolean isEmpty(int board, int cell) {
+        return ((board | (board >>> O_SHIFT)) & (1 << cell)) == 0;
+    }
+
+    public static char get(int board, int cell) {
+        if ((board & (1 << cell)) != 0) return 'X';
+        if ((board & (1 << (cell + O_SHIFT))) != 0) return 'O';
+        return ' ';
+    }
+
+    public static int place(int board, int cell, char mark) {
+        return board | (1 << (mark == 'X' ? cell : cell + O_SHIFT));
+    }
+
+    public static boolean isFull(int board) {
+        return ((board | (board >>> O_SHIFT)) & FULL) == FULL;
+    }
+
+    public static boolean isWin(int board, char mark) {
+        int m = marks(board, mark);
+        for (int line : LINES) {
+            if ((m & line) == line) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Result after mark has just moved: mark if it won, 'D' for a draw, ' ' otherwise
+    public static char result(int board, char mark) {
+        if (isWin(board, mark)) {
+            return mark; // Win
+        }
+        if (isFull(board)) {
+            return 'D'; // Draw
+        }
+        return ' '; // Game continues
+    }
+}
\ No newline at end of file
@@ -0,0 +1,25 @@
+// Game board for one match. 3x3 three-in-a-row uses the packed BitBoard;
+// any other size or win length uses a GridBoard.
+public interface Board {
+    int size();
+
+    int winLength();
+
+    boolean inBounds(int row, int col);
+
+    boolean isEmpty(int row, int col);
+
+    char get(int row, int col);
+
+    // Places mark and returns mark if it won, 'D' for a draw, ' ' otherwise
+    char place(int row, int col, char mark);
+
+    void reset();
+
+    static Board create(int size, int winLength) {
+        if (size == 3 && winLength == 3) {
+            return new CompactBoard();
+        }
+        return new GridBoard(size, winLength);
+    }
+}
\ No newline at end of file
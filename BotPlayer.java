@@ -0,0 +1,64 @@
+// Server-side opponent that fills an empty seat. It has no socket: the
+// session's calls into it are handled directly on the thread applying the
+// match's events, and its moves go back through the session's mailbox, so
+// a bot match costs no thread of its own. On 3x3 it plays from the
+// PerfectPlay table; on larger boards it asks the match's Solver.
+public class BotPlayer extends PlayerHandler {
+    public BotPlayer() {
+        super(new NoConnection(), "Bot");
+    }
+
+    @Override
+    public void sendTurn(boolean yourTurn) {
+        if (!yourTurn) {
+            return;
+        }
+        GameSession session = getSession();
+        int size = session.getBoardSize();
+        session.suggestMove(this, cell -> session.makeMove(this, cell / size, cell % size));
+    }
+
+    @Override
+    public void sendGameOver(char result, String text) {
+        // Always up for another game; ignored if the opponent has left
+        getSession().requestRestart(this);
+    }
+
+    // Nothing else the session sends needs an answer
+
+    @Override
+    public void sendMove(char moveMark, int row, int col, int boardSize) {
+    }
+
+    @Override
+    public void sendReset() {
+    }
+
+    @Override
+    public void sendBoard(int size, int winLength) {
+    }
+
+    @Override
+    public void sendAssignment() {
+    }
+
+    @Override
+    public void sendChat(String text) {
+    }
+
+    @Override
+    public void sendHint(int row, int col) {
+    }
+
+    @Override
+    public void sendToken(String token) {
+    }
+
+    @Override
+    public void sendState(Board board, char turn) {
+    }
+
+    @Override
+    public void flush() {
+    }
+}
\ No newline at end of file
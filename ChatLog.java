@@ -0,0 +1,62 @@
+import javax.swing.*;
+import javax.swing.text.BadLocationException;
+import java.util.ArrayDeque;
+
+// Chat history shown in a JTextArea. Lines are queued as they arrive and
+// written to the area at most once per FLUSH_MILLIS, as one append and one
+// scroll, and only the newest MAX_LINES are kept. A chat flood therefore
+// costs the EDT a few small updates a second instead of one per line,
+// and the document never grows without bound.
+public class ChatLog {
+    public static final int MAX_LINES = 500;
+    public static final int FLUSH_MILLIS = 100;
+
+    private final JTextArea area;
+    private final ArrayDeque<String> pending = new ArrayDeque<>(); // Guarded by itself
+    private final Timer timer;
+    private int lines = 0; // In the area; EDT only
+
+    public ChatLog(JTextArea area) {
+        this.area = area;
+        this.timer = new Timer(FLUSH_MILLIS, e -> flush());
+        this.timer.setRepeats(false);
+    }
+
+    public void append(String line) {
+        synchronized (pending) {
+            if (pending.size() == MAX_LINES) {
+                pending.removeFirst(); // Would be trimmed straight away anyway
+            }
+            pending.addLast(line);
+        }
+        if (!timer.isRunning()) {
+            timer.start();
+        }
+    }
+
+    private void flush() {
+        StringBuilder text = new StringBuilder();
+        int added;
+        synchronized (pending) {
+            added = pending.size();
+            for (String line : pending) {
+                text.append(line).append('\n');
+            }
+            pending.clear();
+        }
+        if (added == 0) {
+            return;
+        }
+        area.append(text.toString());
+        lines += added;
+        if (lines > MAX_LINES) {
+            try {
+                area.getDocument().remove(0, area.getLineStartOffset(lines - MAX_LINES));
+            } catch (BadLocationException e) {
+                area.setText("");
+            }
+            lines = MAX_LINES;
+        }
+        area.setCaretPosition(area.getDocument().getLength());
+    }
+}
\ No newline at end of file
@@ -0,0 +1,47 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+// Collects the lines posted to one room and hands them on together once
+// the batch window has passed, so a burst of messages costs each member
+// one write instead of one per message.
+public class ChatRoom {
+    private final MatchRegistry registry; // For its timer
+    private final long windowMillis;
+    private final Consumer<List<String>> delivery;
+    private ArrayList<String> pending = new ArrayList<>(); // Guarded by this
+    private boolean scheduled = false;
+
+    public ChatRoom(MatchRegistry registry, long windowMillis, Consumer<List<String>> delivery) {
+        this.registry = registry;
+        this.windowMillis = windowMillis;
+        this.delivery = delivery;
+    }
+
+    public void post(String line) {
+        boolean schedule;
+        synchronized (this) {
+            pending.add(line);
+            schedule = !scheduled;
+            scheduled = true;
+        }
+        if (schedule) {
+            registry.schedule(this::deliver, windowMillis);
+        }
+    }
+
+    private void deliver() {
+        List<String> batch;
+        synchronized (this) {
+            batch = pending;
+            pending = new ArrayList<>();
+            scheduled = false;
+        }
+        ServerMetrics.chatBatches.increment();
+        try {
+            delivery.accept(batch);
+        } catch (RuntimeException e) {
+            System.err.println("Chat delivery failed: " + e);
+        }
+    }
+}
\ No newline at end of file
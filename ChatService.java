@@ -0,0 +1,93 @@
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Chat rooms: one lobby room for players waiting to be matched, and one
+// room per match (see GameSession.chat). Senders are rate limited before
+// their text is even formatted, and each room delivers what arrived within
+// BATCH_WINDOW_MILLIS in one go, so a flood costs one write per member per
+// window rather than one per message.
+public class ChatService {
+    public static final long BATCH_WINDOW_MILLIS = 50;
+    public static final int MAX_MESSAGE_LENGTH = 300;
+    // A lobby member this far behind misses messages instead of buffering them
+    private static final int MEMBER_BACKLOG_BYTES = 16 * 1024;
+
+    private final MatchRegistry registry;
+    private final Set<PlayerHandler> lobbyMembers = ConcurrentHashMap.newKeySet();
+    private final ChatRoom lobbyRoom;
+    private volatile double ratePerSecond = 5;
+    private volatile int burst = 10;
+
+    public ChatService(MatchRegistry registry) {
+        this.registry = registry;
+        // Large lobbies take a while to write to; keep that off the timer thread
+        this.lobbyRoom = new ChatRoom(registry, BATCH_WINDOW_MILLIS,
+                lines -> registry.fanOut().execute(() -> deliverToLobby(lines)));
+    }
+
+    public void setRate(double ratePerSecond, int burst) {
+        this.ratePerSecond = ratePerSecond;
+        this.burst = burst;
+    }
+
+    // Limit for one new sender
+    public TokenBucket newLimit() {
+        return new TokenBucket(ratePerSecond, burst);
+    }
+
+    public void enterLobby(PlayerHandler player) {
+        lobbyMembers.add(player);
+    }
+
+    public void leaveLobby(PlayerHandler player) {
+        lobbyMembers.remove(player);
+    }
+
+    // Sends text to the room sender is in; the caller has already charged
+    // the sender's limit
+    public void post(PlayerHandler sender, String text) {
+        if (text.length() > MAX_MESSAGE_LENGTH) {
+            text = text.substring(0, MAX_MESSAGE_LENGTH);
+        }
+        String line = sender.getPlayerName() + ": " + text;
+        ServerMetrics.chatMessages.increment();
+        GameSession session = sender.getSession();
+        if (session != null) {
+            session.chat(line);
+        } else if (lobbyMembers.contains(sender)) {
+            lobbyRoom.post(line);
+        } else {
+            // Not in a room yet (or only watching): echo it back as before
+            sender.sendChat(line);
+            sender.flush();
+        }
+    }
+
+    // Same bytes for every member of a protocol, encoded once per batch
+    private void deliverToLobby(List<String> lines) {
+        if (lobbyMembers.isEmpty()) {
+            return;
+        }
+        OutputBuffer text = new OutputBuffer(64 * lines.size());
+        OutputBuffer binary = new OutputBuffer(64 * lines.size());
+        for (String line : lines) {
+            BinaryProtocol.writeTextFrame(binary, BinaryProtocol.CHAT, 0, 0, line);
+            text.writeAscii("Chat ");
+            text.writeUtf8(line);
+            text.writeByte('\n');
+        }
+        for (PlayerHandler member : lobbyMembers) {
+            OutputBuffer frames = member.isBinary() ? binary : text;
+            OutputBuffer out = member.output();
+            synchronized (out) {
+                if (out.size() > MEMBER_BACKLOG_BYTES) {
+                    ServerMetrics.chatDropped.add(lines.size());
+                    continue;
+                }
+                out.write(frames.array(), 0, frames.size());
+            }
+            member.flushBulk();
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,45 @@
+// Classic 3x3 board held in a single BitBoard int
+public class CompactBoard implements Board {
+    private int state = BitBoard.EMPTY;
+
+    @Override
+    public int size() {
+        return 3;
+    }
+
+    @Override
+    public int winLength() {
+        return 3;
+    }
+
+    @Override
+    public boolean inBounds(int row, int col) {
+        return BitBoard.inBounds(row, col);
+    }
+
+    @Override
+    public boolean isEmpty(int row, int col) {
+        return BitBoard.isEmpty(state, BitBoard.cell(row, col));
+    }
+
+    @Override
+    public char get(int row, int col) {
+        return BitBoard.get(state, BitBoard.cell(row, col));
+    }
+
+    @Override
+    public char place(int row, int col, char mark) {
+        state = BitBoard.place(state, BitBoard.cell(row, col), mark);
+        return BitBoard.result(state, mark);
+    }
+
+    // The BitBoard encoding of the position
+    public int bits() {
+        return state;
+    }
+
+    @Override
+    public void reset() {
+        state = BitBoard.EMPTY;
+    }
+}
\ No newline at end of file
@@ -1,6 +1,10 @@
 import java.io.*;
 import java.net.Socket;
 import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
 import javax.swing.JOptionPane;
 import javax.swing.SwingUtilities;
 
@@ -8,22 +12,135 @@ public class GameClient {
     private Socket socket;
     private BufferedReader in;
     private PrintWriter out;
+    // Used instead of in/out when speaking the binary protocol
+    private DataInputStream binaryIn;
+    private OutputStream binaryOut;
+    private final OutputBuffer frameBuffer = new OutputBuffer(64);
+    private final boolean binary;
+    // Bots run without a display: no dialogs and no per-connection logging
+    private final boolean headless;
+    private int matchId = 0;
+    private int boardSize = 3;
     private String playerName;
     private GameGUI gui;
-    private boolean connected = false;
+    private volatile boolean connected = false;
+    private final String serverAddress;
+    private final int port;
+    // Last TOKEN the server sent; presented by reconnect() to get the seat back
+    private volatile String resumeToken;
+    // First message of this connection, repeated to the node a REDIRECT names
+    private int helloOpcode;
+    private String hello;
+    // After this long without hearing from the server we PING it; the same
+    // again with no answer means the connection is dead even if TCP has not
+    // noticed, and readMessage() fails so the GUI reconnects
+    private static final int SERVER_SILENCE_MILLIS = 30_000;
+    private boolean pingOutstanding = false; // Reader thread only
+    private volatile IOException connectError; // Why the last connection attempt failed
+    private static final long FIRST_RETRY_MILLIS = 250;
+    private static final long MAX_RETRY_MILLIS = 8_000;
 
     public GameClient(String serverAddress, int port) {
-        connectToServer(serverAddress, port);
+        this(serverAddress, port, false);
     }
 
-    private void connectToServer(String serverAddress, int port) {
+    public GameClient(String serverAddress, int port, boolean binary) {
+        this(serverAddress, port, binary, false);
+    }
+
+    public GameClient(String serverAddress, int port, boolean binary, boolean headless) {
+        this.binary = binary;
+        this.headless = headless;
+        this.serverAddress = serverAddress;
+        this.port = port;
+        if (!connectToServer(serverAddress, port) && !headless) {
+            reportConnectError(serverAddress, port, connectError);
+        }
+    }
+
+    public boolean canResume() {
+        return resumeToken != null && playerName != null;
+    }
+
+    // Opens a new connection and asks for the seat the last TOKEN belongs
+    // to. If that match is gone the server puts us in the lobby instead.
+    // Never shows anything: it runs on the reader thread, often many times
+    // in a row, and getConnectError() says why the last attempt failed.
+    public boolean reconnect() {
+        if (!canResume()) {
+            return false;
+        }
+        disconnect();
+        if (!connectToServer(serverAddress, port)) {
+            return false;
+        }
+        sendHello(BinaryProtocol.NAME, playerName + " RESUME " + resumeToken);
+        return true;
+    }
+
+    // NAME or WATCH; remembered in case a router redirects us
+    private void sendHello(int opcode, String text) {
+        helloOpcode = opcode;
+        hello = text;
+        if (binary) {
+            sendFrame(opcode, 0, text);
+        } else {
+            sendToServer((opcode == BinaryProtocol.NAME ? "NAME " : "WATCH ") + text);
+        }
+    }
+
+    // A GameRouter in redirect mode sent us to the node that serves us.
+    // Reconnects later still go to the router, which knows where the match is.
+    private void followRedirect(String address) {
+        int colon = address.lastIndexOf(':');
+        String host;
+        int nodePort;
+        try {
+            host = address.substring(0, colon);
+            nodePort = Integer.parseInt(address.substring(colon + 1));
+        } catch (RuntimeException e) {
+            System.err.println("Ignoring bad redirect: " + address);
+            return;
+        }
+        disconnect();
+        if (!connectToServer(host, nodePort)) {
+            // readMessage() returns null and the GUI reconnects through the router
+            System.err.println("Cannot follow redirect to " + address + ": " + connectError.getMessage());
+        } else if (hello != null) {
+            sendHello(helloOpcode, hello);
+        }
+    }
+
+    // False if it failed; the reason is left in connectError for the caller
+    // to report, so retries stay quiet
+    private boolean connectToServer(String serverAddress, int port) {
         try {
             socket = new Socket(serverAddress, port);
-            in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-            out = new PrintWriter(socket.getOutputStream(), true);
+            socket.setSoTimeout(SERVER_SILENCE_MILLIS);
+            pingOutstanding = false;
+            if (binary) {
+                binaryIn = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                binaryOut = new BufferedOutputStream(socket.getOutputStream());
+                // The first byte tells the server which protocol follows
+                binaryOut.write(BinaryProtocol.MAGIC);
+                binaryOut.flush();
+            } else {
+                in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+                out = new PrintWriter(socket.getOutputStream(), true);
+            }
             connected = true;
-            System.out.println("Connected to server at " + serverAddress + ":" + port);
-        } catch (ConnectException ce) {
+            if (!headless) {
+                System.out.println("Connected to server at " + serverAddress + ":" + port);
+            }
+            return true;
+        } catch (IOException e) {
+            connectError = e;
+            return false;
+        }
+    }
+
+    private void reportConnectError(String serverAddress, int port, IOException e) {
+        if (e instanceof ConnectException ce) {
             System.err.println("Server is not available: " + ce.getMessage());
             if (gui != null) {
                 gui.showError("Cannot connect to server at " + serverAddress + ":" + port);
@@ -33,7 +150,7 @@ public class GameClient {
                         "Connection Error",
                         JOptionPane.ERROR_MESSAGE);
             }
-        } catch (IOException e) {
+        } else {
             System.err.println("Unable to connect to server: " + e.getMessage());
             if (gui != null) {
                 gui.showError("Connection error: " + e.getMessage());
@@ -46,27 +163,225 @@ public class GameClient {
         }
     }
 
+    public IOException getConnectError() {
+        return connectError;
+    }
+
+    // Calls reconnect() until it succeeds or maxWaitMillis has passed. The
+    // delay doubles after each failure, with jitter so that clients dropped
+    // by the same outage do not all come back at the same instant.
+    public boolean reconnectWithBackoff(long maxWaitMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + maxWaitMillis;
+        long delay = FIRST_RETRY_MILLIS;
+        while (true) {
+            if (reconnect()) {
+                return true;
+            }
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0 || !canResume()) {
+                return false;
+            }
+            long jittered = delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+            Thread.sleep(Math.min(jittered, remaining));
+            delay = Math.min(delay * 2, MAX_RETRY_MILLIS);
+        }
+    }
+
     public void setPlayerName(String name) {
         this.playerName = name;
-        if (connected) {
-            sendToServer("NAME " + name);
-        }
+        sendHello(BinaryProtocol.NAME, name);
+    }
+
+    // Spectate a match instead of playing: the server sends its board, then
+    // every move, result and chat message
+    public void watch(long matchId) {
+        sendHello(BinaryProtocol.WATCH, Long.toString(matchId));
     }
 
     public void setGUI(GameGUI gui) {
         this.gui = gui;
     }
 
-    public BufferedReader getInputReader() {
-        return in;
+    public void sendMove(int row, int col) {
+        if (binary) {
+            sendFrame(BinaryProtocol.MOVE, row * boardSize + col, null);
+        } else {
+            sendToServer("Move " + row + "," + col);
+        }
     }
 
-    public void sendToServer(String message) {
+    public void sendChat(String text) {
+        if (binary) {
+            sendFrame(BinaryProtocol.CHAT, 0, text);
+        } else {
+            sendToServer("Chat " + text);
+        }
+    }
+
+    public void requestHint() {
+        if (binary) {
+            sendFrame(BinaryProtocol.HINT, 0, null);
+        } else {
+            sendToServer("HINT");
+        }
+    }
+
+    public void requestRestart() {
+        if (binary) {
+            sendFrame(BinaryProtocol.RESTART, 0, null);
+        } else {
+            sendToServer("RESTART");
+        }
+    }
+
+    private void sendToServer(String message) {
         if (connected && out != null) {
             out.println(message);
         }
     }
 
+    private synchronized void sendFrame(int opcode, int cell, String text) {
+        if (!connected || binaryOut == null) {
+            return;
+        }
+        frameBuffer.clear();
+        if (text != null) {
+            BinaryProtocol.writeTextFrame(frameBuffer, opcode, 0, matchId, text);
+        } else {
+            BinaryProtocol.writeFrame(frameBuffer, opcode, 0, cell, matchId);
+        }
+        try {
+            binaryOut.write(frameBuffer.array(), 0, frameBuffer.size());
+            binaryOut.flush();
+        } catch (IOException e) {
+            if (!headless) {
+                System.err.println("Error sending to server: " + e.getMessage());
+            }
+        }
+    }
+
+    // Next server message in text-protocol form, or null once the server has
+    // closed the connection. Binary frames are translated so the GUI only
+    // deals with one message format.
+    public String readMessage() throws IOException {
+        // PING, PONG, timeouts and redirects are handled here and the loop
+        // reads on, so a long idle connection does not grow the stack
+        while (true) {
+            if (!binary) {
+                String line;
+                try {
+                    line = in.readLine();
+                } catch (SocketTimeoutException e) {
+                    // The server writes whole lines, so this only ever interrupts silence
+                    serverSilent();
+                    continue;
+                }
+                pingOutstanding = false;
+                if ("PING".equals(line)) {
+                    sendToServer("PONG");
+                    continue;
+                } else if ("PONG".equals(line)) {
+                    continue;
+                } else if (line != null && line.startsWith("TOKEN ")) {
+                    resumeToken = line.substring(6);
+                } else if (line != null && line.startsWith("REDIRECT ")) {
+                    followRedirect(line.substring(9));
+                    if (connected) {
+                        continue;
+                    }
+                    return null;
+                }
+                return line;
+            }
+
+            byte[] header = new byte[BinaryProtocol.HEADER_SIZE];
+            try {
+                // Only the first byte may time out; once a frame has started, the rest follows
+                int first = binaryIn.read();
+                if (first < 0) {
+                    return null;
+                }
+                header[0] = (byte) first;
+                pingOutstanding = false;
+                binaryIn.readFully(header, 1, header.length - 1);
+            } catch (SocketTimeoutException e) {
+                if (header[0] != 0) {
+                    throw e; // Stopped in the middle of a frame
+                }
+                serverSilent();
+                continue;
+            } catch (EOFException e) {
+                return null;
+            }
+            int opcode = BinaryProtocol.opcode(header, 0);
+            int arg = BinaryProtocol.arg(header, 0);
+            int cell = BinaryProtocol.cell(header, 0);
+            matchId = BinaryProtocol.matchId(header, 0);
+
+            String text = "";
+            if (BinaryProtocol.hasPayload(opcode)) {
+                if (cell > BinaryProtocol.MAX_PAYLOAD) {
+                    throw new IOException("Oversized frame from server: " + cell + " bytes");
+                }
+                byte[] payload = new byte[cell];
+                binaryIn.readFully(payload);
+                text = new String(payload, StandardCharsets.UTF_8);
+            }
+
+            switch (opcode) {
+                case BinaryProtocol.BOARD:
+                    boardSize = cell;
+                    return "BOARD " + cell + " " + arg;
+                case BinaryProtocol.ASSIGN:
+                    return "You are " + (char) arg;
+                case BinaryProtocol.TURN:
+                    return arg == 1 ? "Your turn" : "Opponent's turn";
+                case BinaryProtocol.MOVE:
+                    return "Move " + (char) arg + " " + (cell / boardSize) + "," + (cell % boardSize);
+                case BinaryProtocol.HINT:
+                    return "HINT " + (cell / boardSize) + "," + (cell % boardSize);
+                case BinaryProtocol.GAME_OVER:
+                    return "GAME_OVER " + text;
+                case BinaryProtocol.CHAT:
+                    return "Chat " + text;
+                case BinaryProtocol.RESET:
+                    return "RESET_GAME";
+                case BinaryProtocol.TOKEN:
+                    resumeToken = text;
+                    return "TOKEN " + text;
+                case BinaryProtocol.STATE:
+                    return "STATE " + text + " " + (char) arg;
+                case BinaryProtocol.REDIRECT:
+                    followRedirect(text);
+                    if (connected) {
+                        continue;
+                    }
+                    return null;
+                case BinaryProtocol.PING:
+                    sendFrame(BinaryProtocol.PONG, 0, null);
+                    continue;
+                case BinaryProtocol.PONG:
+                    continue;
+                default:
+                    return ""; // Unknown frames are ignored like unknown lines
+            }
+        }
+    }
+
+    // A read timed out: ask the server whether it is still there, or give
+    // up if it did not answer the last time we asked
+    private void serverSilent() throws IOException {
+        if (pingOutstanding) {
+            throw new IOException("Server stopped responding");
+        }
+        pingOutstanding = true;
+        if (binary) {
+            sendFrame(BinaryProtocol.PING, 0, null);
+        } else {
+            sendToServer("PING");
+        }
+    }
+
     public boolean isConnected() {
         return connected;
     }
@@ -90,20 +405,37 @@ public class GameClient {
             String serverAddress = "localhost";
             int port = 12345;
 
+            // --binary switches to the compact binary protocol
+            boolean binary = Arrays.asList(args).contains("--binary");
+            // --debug-latency shows socket-read-to-screen times under the board
+            boolean debugLatency = Arrays.asList(args).contains("--debug-latency");
+            // --watch=ID spectates that match instead of playing
+            long watchMatch = 0;
+            for (String arg : args) {
+                if (arg.startsWith("--watch=")) {
+                    try {
+                        watchMatch = Long.parseLong(arg.substring("--watch=".length()));
+                    } catch (NumberFormatException e) {
+                        System.err.println("Invalid match id: " + arg);
+                    }
+                }
+            }
+            String[] positional = Arrays.stream(args).filter(arg -> !arg.startsWith("--")).toArray(String[]::new);
+
             // Allow command line arguments for server address and port
-            if (args.length >= 1) {
-                serverAddress = args[0];
+            if (positional.length >= 1) {
+                serverAddress = positional[0];
             }
-            if (args.length >= 2) {
+            if (positional.length >= 2) {
                 try {
-                    port = Integer.parseInt(args[1]);
+                    port = Integer.parseInt(positional[1]);
                 } catch (NumberFormatException e) {
                     System.err.println("Invalid port number. Using default: 12345");
                 }
             }
 
             // If no command line arguments, ask for server information
-            if (args.length == 0) {
+            if (positional.length == 0) {
                 // Get server information from the user
                 serverAddress = JOptionPane.showInputDialog(
                         null,
@@ -132,11 +464,13 @@ public class GameClient {
                 }
             }
 
-            GameClient client = new GameClient(serverAddress, port);
+            GameClient client = new GameClient(serverAddress, port, binary);
 
             if (client.isConnected()) {
                 GameGUI gui = new GameGUI(client);
                 client.setGUI(gui);
+                gui.setWatching(watchMatch);
+                gui.setLatencyOverlay(debugLatency);
                 gui.createAndShowGUI();
             } else {
                 System.exit(1);
@@ -1,46 +1,134 @@
 import javax.swing.*;
 import java.awt.*;
-import java.io.BufferedReader;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 
 public class GameGUI {
     private final GameClient client;
     private JFrame frame;
-    private JButton[][] buttons = new JButton[3][3];
-    private JTextArea chatArea;
+    private JPanel boardPanel;
+    private JButton[][] buttons;
+    private ChatLog chatLog;
     private JTextField chatInput;
     private JLabel statusLabel;
     private JButton restartButton;
+    private JPanel statusButtons;
+    private long watchingMatch = 0; // Non-zero when spectating instead of playing
+    private static final long RECONNECT_WINDOW_MILLIS = 60_000;
+    // Most messages applied in one EDT event; the rest wait for the next one
+    // so that input and painting still get a turn during a flood
+    private static final int MAX_BATCH = 1000;
+
+    // What the reader thread has queued for the EDT: a message and when it
+    // was read, or an update of its own that must not overtake the messages
+    private record Incoming(String message, long readNanos, Runnable update) {
+    }
+
+    private final ConcurrentLinkedQueue<Incoming> incoming = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean drainScheduled = new AtomicBoolean(false);
+    private final ArrayList<String> batch = new ArrayList<>(); // EDT only
+
+    // Server messages by their first word; each handler gets the rest of the line
+    private final Map<String, Consumer<String>> handlers = new HashMap<>();
+
+    // Cells whose button text no longer matches boardState; written to the
+    // buttons once per batch, however many messages touched them
+    private boolean[] dirtyCells = new boolean[9];
+    private boolean boardDirty = false;
+
+    // --debug-latency: socket read to painted board, shown under the board
+    private JLabel latencyLabel;
+    private LatencyHistogram readToPaint;
+    private long latencyShownAt;
+    private long messagesApplied;
+    private long batchesApplied;
 
     private String mySymbol = "";
     private boolean myTurn = false;
     private boolean gameOver = false;
 
-    // Track the board state on the client side
-    private char[][] boardState = new char[3][3];
+    // Track the board state on the client side; resized by the server's BOARD message
+    private Board boardState = Board.create(3, 3);
 
     public GameGUI(GameClient client) {
         this.client = client;
-        // Initialize board to empty spaces
-        resetBoard();
+        handlers.put("BOARD", this::onBoard);
+        handlers.put("Move", this::onMove);
+        handlers.put("HINT", this::onHint);
+        handlers.put("Chat", text -> chatLog.append(text));
+        handlers.put("Your", text -> {
+            if (text.equals("turn")) {
+                myTurn = true;
+                statusLabel.setText("Your turn");
+            }
+        });
+        handlers.put("Opponent's", text -> {
+            if (text.equals("turn")) {
+                myTurn = false;
+                statusLabel.setText("Opponent's turn");
+            }
+        });
+        handlers.put("You", this::onAssigned);
+        handlers.put("GAME_OVER", this::onGameOver);
+        handlers.put("STATE", this::restoreState);
+        handlers.put("RESET_GAME", text -> {
+            resetUIForNewGame();
+            chatLog.append("System: Starting new game!");
+        });
     }
 
-    private void resetBoard() {
-        for (int i = 0; i < 3; i++) {
-            for (int j = 0; j < 3; j++) {
-                boardState[i][j] = ' ';
-            }
-        }
+    // Spectate matchId instead of asking for a name and joining the lobby
+    public void setWatching(long matchId) {
+        this.watchingMatch = matchId;
+    }
+
+    // Show how long server messages take from the socket to the screen
+    public void setLatencyOverlay(boolean enabled) {
+        this.readToPaint = enabled ? new LatencyHistogram() : null;
     }
 
     public void createAndShowGUI() {
-        String name = JOptionPane.showInputDialog("Enter your name:");
-        if (name == null || name.trim().isEmpty()) name = "Player";
-        client.setPlayerName(name);
+        if (watchingMatch > 0) {
+            client.watch(watchingMatch);
+        } else {
+            String name = JOptionPane.showInputDialog("Enter your name:");
+            if (name == null || name.trim().isEmpty()) name = "Player";
+            client.setPlayerName(name);
+        }
 
-        frame = new JFrame("Tic-Tac-Toe");
+        frame = new JFrame(watchingMatch > 0 ? "Tic-Tac-Toe - watching match " + watchingMatch : "Tic-Tac-Toe");
         frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
-        frame.setLayout(new BorderLayout());
+        buildComponents(frame.getContentPane());
+        if (watchingMatch > 0) {
+            // Spectators can only chat
+            statusButtons.setVisible(false);
+            statusLabel.setText("Watching match " + watchingMatch);
+        }
+
+        // Set frame properties
+        frame.setSize(600, 400);
+        frame.setMinimumSize(new Dimension(500, 350));
+        frame.setLocationRelativeTo(null);
+        frame.setVisible(true);
+
+        // Only start listening if we're connected
+        if (client.isConnected()) {
+            listenToServer();
+        }
+    }
+
+    // Everything inside the window. Package-private so the benchmarks can
+    // drive processServerMessage without a display.
+    void buildComponents(Container content) {
+        content.setLayout(new BorderLayout());
 
         // Status panel at the top
         JPanel statusPanel = new JPanel(new BorderLayout());
@@ -52,44 +140,39 @@ public class GameGUI {
         restartButton = new JButton("New Game");
         restartButton.setEnabled(false);
         restartButton.addActionListener(e -> {
-            client.sendToServer("RESTART");
-            chatArea.append("System: Requesting new game...\n");
+            client.requestRestart();
+            chatLog.append("System: Requesting new game...");
             restartButton.setEnabled(false);
         });
-        statusPanel.add(restartButton, BorderLayout.EAST);
+        // Hint button: the server answers with a suggested cell
+        JButton hintButton = new JButton("Hint");
+        hintButton.addActionListener(e -> {
+            if (myTurn && !gameOver) {
+                client.requestHint();
+            }
+        });
 
-        frame.add(statusPanel, BorderLayout.NORTH);
+        statusButtons = new JPanel(new FlowLayout(FlowLayout.RIGHT, 4, 0));
+        statusButtons.add(hintButton);
+        statusButtons.add(restartButton);
+        statusPanel.add(statusButtons, BorderLayout.EAST);
 
-        // Game board in the center
-        JPanel board = new JPanel(new GridLayout(3, 3));
-        board.setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 10));
-        Font buttonFont = new Font("Arial", Font.BOLD, 60);
+        content.add(statusPanel, BorderLayout.NORTH);
 
-        for (int row = 0; row < 3; row++) {
-            for (int col = 0; col < 3; col++) {
-                JButton button = new JButton("");
-                button.setFont(buttonFont);
-                button.setPreferredSize(new Dimension(100, 100));
-                final int r = row;
-                final int c = col;
-                button.addActionListener(e -> {
-                    if (myTurn && !gameOver && button.getText().isEmpty()) {
-                        client.sendToServer("Move " + r + "," + c);
-                    }
-                });
-                buttons[row][col] = button;
-                board.add(button);
-            }
-        }
+        // Game board in the center
+        boardPanel = new JPanel();
+        boardPanel.setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 10));
+        buildBoard();
 
-        frame.add(board, BorderLayout.CENTER);
+        content.add(boardPanel, BorderLayout.CENTER);
 
         // Chat panel on the right
-        chatArea = new JTextArea(10, 20);
+        JTextArea chatArea = new JTextArea(10, 20);
         chatArea.setEditable(false);
         chatArea.setLineWrap(true);
         chatArea.setWrapStyleWord(true);
         JScrollPane chatScroll = new JScrollPane(chatArea);
+        chatLog = new ChatLog(chatArea);
 
         chatInput = new JTextField();
         JButton sendButton = new JButton("Send");
@@ -103,28 +186,57 @@ public class GameGUI {
         chatPanel.add(chatScroll, BorderLayout.CENTER);
         chatPanel.add(chatBottom, BorderLayout.SOUTH);
 
-        frame.add(chatPanel, BorderLayout.EAST);
+        content.add(chatPanel, BorderLayout.EAST);
+
+        if (readToPaint != null) {
+            latencyLabel = new JLabel("read to paint: no messages yet", SwingConstants.LEFT);
+            latencyLabel.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 11));
+            latencyLabel.setForeground(Color.DARK_GRAY);
+            latencyLabel.setBorder(BorderFactory.createEmptyBorder(2, 6, 2, 6));
+            content.add(latencyLabel, BorderLayout.SOUTH);
+        }
 
         // Event listeners for chat
         sendButton.addActionListener(e -> sendChat());
         chatInput.addActionListener(e -> sendChat());
+    }
 
-        // Set frame properties
-        frame.setSize(600, 400);
-        frame.setMinimumSize(new Dimension(500, 350));
-        frame.setLocationRelativeTo(null);
-        frame.setVisible(true);
+    private void buildBoard() {
+        int size = boardState.size();
+        int cellSize = size <= 3 ? 100 : Math.max(28, 540 / size);
+        Font buttonFont = new Font("Arial", Font.BOLD, cellSize * 3 / 5);
 
-        // Only start listening if we're connected
-        if (client.isConnected()) {
-            listenToServer();
+        boardPanel.removeAll();
+        boardPanel.setLayout(new GridLayout(size, size));
+        buttons = new JButton[size][size];
+        dirtyCells = new boolean[size * size];
+        boardDirty = false;
+
+        for (int row = 0; row < size; row++) {
+            for (int col = 0; col < size; col++) {
+                JButton button = new JButton("");
+                button.setFont(buttonFont);
+                button.setMargin(new Insets(0, 0, 0, 0));
+                button.setPreferredSize(new Dimension(cellSize, cellSize));
+                final int r = row;
+                final int c = col;
+                button.addActionListener(e -> {
+                    if (myTurn && !gameOver && boardState.isEmpty(r, c)) {
+                        client.sendMove(r, c);
+                    }
+                });
+                buttons[row][col] = button;
+                boardPanel.add(button);
+            }
         }
+        boardPanel.revalidate();
+        boardPanel.repaint();
     }
 
     private void sendChat() {
         String text = chatInput.getText().trim();
         if (!text.isEmpty()) {
-            client.sendToServer("Chat " + text);
+            client.sendChat(text);
             chatInput.setText("");
         }
     }
@@ -135,81 +247,274 @@ public class GameGUI {
 
     private void listenToServer() {
         new Thread(() -> {
-            try {
-                BufferedReader in = client.getInputReader();
-                String line;
-                while ((line = in.readLine()) != null) {
-                    final String message = line;
-                    SwingUtilities.invokeLater(() -> processServerMessage(message));
+            boolean gaveUp = false;
+            while (true) {
+                try {
+                    String line;
+                    while ((line = client.readMessage()) != null) {
+                        enqueue(new Incoming(line, System.nanoTime(), null));
+                    }
+                } catch (IOException e) {
+                    // Same as the server closing the connection
+                }
+                if (!client.canResume()) {
+                    break;
                 }
-            } catch (IOException e) {
-                SwingUtilities.invokeLater(() -> {
-                    statusLabel.setText("Disconnected from server.");
+
+                // The server holds our seat for a while; get back in before
+                // it gives up. The STATE it sends redraws the board.
+                afterMessages(() -> {
+                    statusLabel.setText("Connection lost. Reconnecting...");
                     disableAllButtons();
                 });
+                try {
+                    if (!client.reconnectWithBackoff(RECONNECT_WINDOW_MILLIS)) {
+                        gaveUp = true;
+                        break;
+                    }
+                } catch (InterruptedException e) {
+                    break;
+                }
+                afterMessages(() -> statusLabel.setText("Reconnected."));
+            }
+            afterMessages(() -> {
+                statusLabel.setText("Disconnected from server.");
+                disableAllButtons();
+            });
+            if (gaveUp) {
+                // One dialog once the retries are used up, not one per attempt
+                IOException error = client.getConnectError();
+                String message = "Could not reconnect to the server"
+                        + (error != null ? ": " + error.getMessage() : ".");
+                SwingUtilities.invokeLater(() -> showError(message));
             }
-        }).start();
+        }, "server-listener").start();
     }
 
-    private void processServerMessage(String message) {
-        if (message.startsWith("Move ")) {
-            String[] parts = message.split(" ");
-            if (parts.length == 3) {
-                String symbol = parts[1];
-                String[] coords = parts[2].split(",");
-                int row = Integer.parseInt(coords[0]);
-                int col = Integer.parseInt(coords[1]);
+    private void enqueue(Incoming next) {
+        incoming.add(next);
+        // One EDT event applies everything queued before it runs
+        if (drainScheduled.compareAndSet(false, true)) {
+            SwingUtilities.invokeLater(this::drainIncoming);
+        }
+    }
 
-                // Update UI
-                buttons[row][col].setText(symbol);
+    // Runs update on the EDT once the messages read before it are applied
+    private void afterMessages(Runnable update) {
+        enqueue(new Incoming(null, 0, update));
+    }
 
-                // Update client-side board state
-                boardState[row][col] = symbol.charAt(0);
+    // On the EDT: applies every queued message (up to MAX_BATCH), then
+    // updates the board once
+    private void drainIncoming() {
+        long oldestRead = 0;
+        int applied = 0;
+        try {
+            Incoming next;
+            while (applied < MAX_BATCH && (next = incoming.poll()) != null) {
+                if (next.update != null) {
+                    processServerMessages(batch);
+                    batch.clear();
+                    next.update.run();
+                    continue;
+                }
+                if (applied++ == 0) {
+                    oldestRead = next.readNanos;
+                }
+                batch.add(next.message);
+            }
+            processServerMessages(batch);
+        } finally {
+            batch.clear();
+            drainScheduled.set(false);
+            // Same re-check as the server's mailboxes: a message queued while
+            // we were finishing would otherwise wait for the next one
+            if (!incoming.isEmpty() && drainScheduled.compareAndSet(false, true)) {
+                SwingUtilities.invokeLater(this::drainIncoming);
+            }
+        }
+        if (readToPaint != null && applied > 0) {
+            // The repaints this batch asked for are already queued, so this
+            // runs once they have been painted
+            long readNanos = oldestRead;
+            int messages = applied;
+            SwingUtilities.invokeLater(() -> painted(readNanos, messages));
+        }
+    }
+
+    // Package-private so the benchmarks can drive it without a display
+    void processServerMessage(String message) {
+        dispatch(message);
+        refreshBoard();
+    }
+
+    void processServerMessages(List<String> messages) {
+        for (String message : messages) {
+            try {
+                dispatch(message);
+            } catch (RuntimeException e) {
+                System.err.println("Ignoring bad message from server: " + message);
+            }
+        }
+        refreshBoard();
+    }
+
+    private void dispatch(String message) {
+        int space = message.indexOf(' ');
+        Consumer<String> handler = handlers.get(space < 0 ? message : message.substring(0, space));
+        if (handler != null) {
+            handler.accept(space < 0 ? "" : message.substring(space + 1));
+        }
+    }
+
+    // "BOARD <size> <winLength>"
+    private void onBoard(String text) {
+        int space = text.indexOf(' ');
+        int size = Integer.parseInt(text, 0, space, 10);
+        int winLength = Integer.parseInt(text, space + 1, text.length(), 10);
+        if (size != boardState.size() || winLength != boardState.winLength()) {
+            boardState = Board.create(size, winLength);
+            buildBoard();
+            if (size > 3 && frame != null) {
+                frame.pack();
+                frame.setLocationRelativeTo(null);
             }
-        } else if (message.startsWith("Chat ")) {
-            chatArea.append(message.substring(5) + "\n");
-            chatArea.setCaretPosition(chatArea.getDocument().getLength());
-        } else if (message.equals("Your turn")) {
-            myTurn = true;
-            statusLabel.setText("Your turn");
-        } else if (message.equals("Opponent's turn")) {
-            myTurn = false;
-            statusLabel.setText("Opponent's turn");
-        } else if (message.equals("You are X") || message.equals("You are O")) {
-            mySymbol = message.endsWith("X") ? "X" : "O";
-            statusLabel.setText("You are playing as " + mySymbol);
-        } else if (message.startsWith("GAME_OVER")) {
-            gameOver = true;
-            myTurn = false;
-            statusLabel.setText(message.substring(10));
-            restartButton.setEnabled(true);
-        } else if (message.equals("RESET_GAME")) {
-            // Reset the game board UI
-            resetUIForNewGame();
-            chatArea.append("System: Starting new game!\n");
         }
     }
 
+    // "Move <mark> <row>,<col>"
+    private void onMove(String text) {
+        int space = text.indexOf(' ');
+        int comma = text.indexOf(',', space + 1);
+        if (space != 1 || comma < 0) {
+            return;
+        }
+        int row = Integer.parseInt(text, space + 1, comma, 10);
+        int col = Integer.parseInt(text, comma + 1, text.length(), 10);
+        boardState.place(row, col, text.charAt(0));
+        markDirty(row * buttons.length + col);
+    }
+
+    // "HINT <row>,<col>"
+    private void onHint(String text) {
+        int comma = text.indexOf(',');
+        int row = Integer.parseInt(text, 0, comma, 10);
+        int col = Integer.parseInt(text, comma + 1, text.length(), 10);
+        if (myTurn && boardState.isEmpty(row, col)) {
+            statusLabel.setText("Hint: row " + (row + 1) + ", column " + (col + 1));
+        }
+    }
+
+    // "You are X" or "You are O": start of a match, or of a resumed one (a
+    // STATE follows); either way the board from before no longer applies
+    private void onAssigned(String text) {
+        if (!text.equals("are X") && !text.equals("are O")) {
+            return;
+        }
+        resetUIForNewGame();
+        mySymbol = text.endsWith("X") ? "X" : "O";
+        statusLabel.setText("You are playing as " + mySymbol);
+    }
+
+    private void onGameOver(String text) {
+        gameOver = true;
+        myTurn = false;
+        statusLabel.setText(text);
+        restartButton.setEnabled(true);
+    }
+
+    // "STATE <cells> <turn>" after rejoining: redraw the whole board from
+    // the server's copy instead of the moves we missed
+    private void restoreState(String text) {
+        int size = buttons.length;
+        if (text.length() != size * size + 2 || text.charAt(size * size) != ' ') {
+            return;
+        }
+        boardState.reset();
+        for (int row = 0; row < size; row++) {
+            for (int col = 0; col < size; col++) {
+                char c = text.charAt(row * size + col);
+                if (c == 'X' || c == 'O') {
+                    boardState.place(row, col, c);
+                }
+                buttons[row][col].setEnabled(true);
+            }
+        }
+        markAllDirty();
+        gameOver = text.charAt(size * size + 1) == '-';
+        restartButton.setEnabled(gameOver);
+    }
+
     private void resetUIForNewGame() {
         // Reset the UI elements for a new game
-        resetBoard();
+        boardState.reset();
 
         // Clear all buttons
-        for (int row = 0; row < 3; row++) {
-            for (int col = 0; col < 3; col++) {
-                buttons[row][col].setText("");
+        for (int row = 0; row < buttons.length; row++) {
+            for (int col = 0; col < buttons.length; col++) {
                 buttons[row][col].setEnabled(true);
             }
         }
+        markAllDirty();
 
         // Reset game state
         gameOver = false;
         restartButton.setEnabled(false);
     }
 
+    private void markDirty(int cell) {
+        dirtyCells[cell] = true;
+        boardDirty = true;
+    }
+
+    private void markAllDirty() {
+        Arrays.fill(dirtyCells, true);
+        boardDirty = true;
+    }
+
+    // Copies boardState to the buttons of the cells changed since the last
+    // call; a button whose text ends up the same is not repainted at all
+    private void refreshBoard() {
+        if (!boardDirty) {
+            return;
+        }
+        int size = buttons.length;
+        for (int cell = 0; cell < dirtyCells.length; cell++) {
+            if (!dirtyCells[cell]) {
+                continue;
+            }
+            dirtyCells[cell] = false;
+            char c = boardState.get(cell / size, cell % size);
+            String text = c == 'X' ? "X" : c == 'O' ? "O" : "";
+            JButton button = buttons[cell / size][cell % size];
+            if (!text.equals(button.getText())) {
+                button.setText(text);
+            }
+        }
+        boardDirty = false;
+    }
+
+    // A batch read at readNanos has been painted; the label is refreshed at
+    // most four times a second so it does not add to what it measures
+    private void painted(long readNanos, int messages) {
+        Toolkit.getDefaultToolkit().sync(); // Painted means on screen, not just queued to X11
+        long now = System.nanoTime();
+        readToPaint.record(now - readNanos);
+        batchesApplied++;
+        messagesApplied += messages;
+        if (now - latencyShownAt < TimeUnit.MILLISECONDS.toNanos(250)) {
+            return;
+        }
+        latencyShownAt = now;
+        latencyLabel.setText(String.format(
+                "read to paint: p50 %.1f ms, p99 %.1f ms, max %.1f ms over %d batches (%.1f messages each)",
+                readToPaint.quantile(0.5) / 1e6, readToPaint.quantile(0.99) / 1e6, readToPaint.max() / 1e6,
+                batchesApplied, (double) messagesApplied / batchesApplied));
+    }
+
     private void disableAllButtons() {
-        for (int row = 0; row < 3; row++) {
-            for (int col = 0; col < 3; col++) {
+        for (int row = 0; row < buttons.length; row++) {
+            for (int col = 0; col < buttons.length; col++) {
                 buttons[row][col].setEnabled(false);
             }
         }
@@ -0,0 +1,445 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+// Append-only binary log of every game. Each event is one fixed 24-byte
+// record:
+//
+//   0: type   1: mark   2-3: cell (or board size)   4-5: aux   6-7: unused
+//   8-15: match id   16-23: time (epoch millis), or the secret for TOKEN
+//
+// Sessions append from their own thread into an in-memory batch; a writer
+// thread swaps the batch out every few milliseconds and writes it with one
+// FileChannel write and one fsync (group commit), so no handler ever waits
+// on the disk. Files roll over at 64 MB and are never rewritten.
+//
+// The writer also applies every record to a map of the matches still in
+// progress, and every 30 seconds writes that map out as a snapshot. After
+// a crash, open() loads the newest snapshot and replays only the files
+// written since, so recovery time depends on the number of live matches
+// and the snapshot interval, not on how long the journal is.
+public class GameJournal {
+    public static final int RECORD_SIZE = 24;
+
+    public static final int START = 1;  // New game in a match; cell: board size, aux: win length
+    public static final int MOVE = 2;   // mark moved to cell; aux: move number in this game, from 1
+    public static final int RESULT = 3; // mark: winner, 'D' for a draw, '-' if abandoned; aux: moves played
+    public static final int CLOSE = 4;  // Match over; no more records for this id
+    public static final int TOKEN = 5;  // Resume secret for mark's seat
+
+    private static final long SEGMENT_BYTES = 64L << 20;
+    private static final long GROUP_COMMIT_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+    private static final long SNAPSHOT_NANOS = TimeUnit.SECONDS.toNanos(30);
+    private static final int SNAPSHOT_MAGIC = 0x54545331; // "TTS1"
+
+    private final Path directory;
+    private final Thread writer;
+    private OutputBuffer batch = new OutputBuffer(256 * RECORD_SIZE); // Guarded by this
+    private OutputBuffer writing = new OutputBuffer(256 * RECORD_SIZE); // Writer thread only
+    private FileChannel segment;
+    private long segmentBytes = 0;
+    private int segmentNumber;
+    private volatile boolean closed = false;
+
+    // Matches in progress as of the last record written; writer thread only
+    // once open() has returned
+    private final HashMap<Long, MatchState> live = new HashMap<>();
+    private long maxMatchId = 0;
+    private boolean changedSinceSnapshot = false;
+    private List<MatchState> recovered = List.of();
+
+    private GameJournal() {
+        this.directory = null;
+        this.writer = null;
+    }
+
+    private GameJournal(Path directory) throws IOException {
+        this.directory = directory;
+        Files.createDirectories(directory);
+        List<Path> existing = segments(directory);
+
+        // Newest snapshot, then every file it does not cover
+        int covered = loadSnapshot();
+        for (Path file : existing) {
+            if (segmentIndex(file) >= covered) {
+                replayFile(file, this::apply);
+            }
+        }
+        recovered = new ArrayList<>(live.values());
+        changedSinceSnapshot = !recovered.isEmpty();
+
+        // Always start a fresh file; the last one may end in a torn record
+        segmentNumber = existing.isEmpty() ? 1 : segmentIndex(existing.get(existing.size() - 1)) + 1;
+        openSegment();
+        this.writer = new Thread(this::writeBatches, "journal-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    public static GameJournal open(Path directory) throws IOException {
+        return new GameJournal(directory);
+    }
+
+    // Journal that records nothing, for servers started without --journal
+    public static GameJournal disabled() {
+        return new GameJournal();
+    }
+
+    public boolean isEnabled() {
+        return writer != null;
+    }
+
+    // Matches that were still in progress when the previous server stopped
+    public Collection<MatchState> recoveredMatches() {
+        return recovered;
+    }
+
+    // Highest match id ever journaled, so new matches never reuse one
+    public long maxMatchId() {
+        return maxMatchId;
+    }
+
+    public void start(long matchId, int boardSize, int winLength) {
+        append(START, ' ', boardSize, winLength, matchId);
+    }
+
+    public void move(long matchId, char mark, int cell, int moveNumber) {
+        append(MOVE, mark, cell, moveNumber, matchId);
+    }
+
+    public void result(long matchId, char result, int moves) {
+        append(RESULT, result, 0, moves, matchId);
+    }
+
+    public void close(long matchId) {
+        append(CLOSE, ' ', 0, 0, matchId);
+    }
+
+    public void token(long matchId, char mark, long secret) {
+        append(TOKEN, mark, 0, 0, matchId, secret);
+    }
+
+    private void append(int type, char mark, int cell, int aux, long matchId) {
+        append(type, mark, cell, aux, matchId, System.currentTimeMillis());
+    }
+
+    private void append(int type, char mark, int cell, int aux, long matchId, long now) {
+        if (writer == null || closed) {
+            return;
+        }
+        synchronized (this) {
+            batch.writeByte(type);
+            batch.writeByte(mark);
+            batch.writeShort(cell);
+            batch.writeShort(aux);
+            batch.writeShort(0);
+            batch.writeLong(matchId);
+            batch.writeLong(now);
+        }
+        ServerMetrics.journalRecords.increment();
+    }
+
+    // Flushes what has been appended so far and stops the writer
+    public void shutdown() {
+        if (writer == null || closed) {
+            return;
+        }
+        closed = true;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void writeBatches() {
+        long lastSnapshot = System.nanoTime();
+        try {
+            while (true) {
+                boolean last = closed;
+                synchronized (this) {
+                    OutputBuffer full = batch;
+                    batch = writing;
+                    writing = full;
+                }
+                if (writing.size() > 0) {
+                    writeOut(writing);
+                    applyAll(writing);
+                    writing.clear();
+                }
+                if (last) {
+                    segment.close();
+                    return;
+                }
+                if (changedSinceSnapshot && System.nanoTime() - lastSnapshot > SNAPSHOT_NANOS) {
+                    writeSnapshot();
+                    lastSnapshot = System.nanoTime();
+                }
+                LockSupport.parkNanos(GROUP_COMMIT_NANOS);
+            }
+        } catch (IOException e) {
+            // Keep the server running; games simply stop being recorded
+            System.err.println("Journal write failed, journaling stopped: " + e.getMessage());
+            closed = true;
+        }
+    }
+
+    private void writeOut(OutputBuffer records) throws IOException {
+        if (segmentBytes >= SEGMENT_BYTES) {
+            segment.close();
+            segmentNumber++;
+            openSegment();
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(records.array(), 0, records.size());
+        while (buffer.hasRemaining()) {
+            segment.write(buffer);
+        }
+        segment.force(false);
+        segmentBytes += records.size();
+        ServerMetrics.journalCommits.increment();
+    }
+
+    private void applyAll(OutputBuffer records) {
+        ByteBuffer buffer = ByteBuffer.wrap(records.array(), 0, records.size());
+        while (buffer.remaining() >= RECORD_SIZE) {
+            readRecord(buffer, this::apply);
+        }
+    }
+
+    private void apply(int type, char mark, int cell, int aux, long matchId, long time) {
+        maxMatchId = Math.max(maxMatchId, matchId);
+        changedSinceSnapshot = true;
+        switch (type) {
+            case START: {
+                MatchState state = live.computeIfAbsent(matchId, MatchState::new);
+                state.boardSize = cell;
+                state.winLength = aux;
+                state.cells = new byte[cell * cell];
+                state.moves = 0;
+                state.lastMover = ' ';
+                state.result = ' ';
+                break;
+            }
+            case MOVE: {
+                MatchState state = live.get(matchId);
+                if (state != null && state.cells != null && cell < state.cells.length) {
+                    state.cells[cell] = (byte) mark;
+                    state.moves = aux;
+                    state.lastMover = mark;
+                }
+                break;
+            }
+            case RESULT: {
+                MatchState state = live.get(matchId);
+                if (state != null) {
+                    state.result = mark;
+                }
+                break;
+            }
+            case TOKEN: {
+                MatchState state = live.computeIfAbsent(matchId, MatchState::new);
+                if (mark == 'X') {
+                    state.tokenX = time;
+                } else {
+                    state.tokenO = time;
+                }
+                break;
+            }
+            case CLOSE:
+                live.remove(matchId);
+                break;
+            default:
+                break;
+        }
+    }
+
+    // Starts a new file so the snapshot covers exactly the files before it,
+    // writes it beside the journal, then drops older snapshots
+    private void writeSnapshot() throws IOException {
+        segment.close();
+        segmentNumber++;
+        openSegment();
+
+        Path target = directory.resolve(String.format("snapshot-%06d.bin", segmentNumber));
+        Path temporary = directory.resolve(target.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                     Channels.newOutputStream(channel), 1 << 16))) {
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeLong(maxMatchId);
+            int count = 0;
+            for (MatchState state : live.values()) {
+                if (state.cells != null) {
+                    count++;
+                }
+            }
+            out.writeInt(count);
+            for (MatchState state : live.values()) {
+                if (state.cells == null) {
+                    continue; // Tokens without a game yet; the next START brings it in
+                }
+                out.writeLong(state.matchId);
+                out.writeShort(state.boardSize);
+                out.writeShort(state.winLength);
+                out.writeShort(state.moves);
+                out.writeByte(state.lastMover);
+                out.writeByte(state.result);
+                out.writeLong(state.tokenX);
+                out.writeLong(state.tokenO);
+                out.write(state.cells);
+            }
+            out.flush();
+            channel.force(false);
+        }
+        Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        changedSinceSnapshot = false;
+        ServerMetrics.journalSnapshots.increment();
+
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "snapshot-*.bin")) {
+            for (Path old : stream) {
+                if (!old.equals(target)) {
+                    Files.deleteIfExists(old);
+                }
+            }
+        }
+    }
+
+    // Loads the newest snapshot into live; returns the first file number it
+    // does not cover (1 if there is none)
+    private int loadSnapshot() throws IOException {
+        Path newest = null;
+        int newestIndex = 0;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "snapshot-*.bin")) {
+            for (Path file : stream) {
+                String name = file.getFileName().toString();
+                int index = Integer.parseInt(name.substring("snapshot-".length(), name.length() - ".bin".length()));
+                if (index > newestIndex) {
+                    newest = file;
+                    newestIndex = index;
+                }
+            }
+        }
+        if (newest == null) {
+            return 1;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(newest), 1 << 16))) {
+            if (in.readInt() != SNAPSHOT_MAGIC) {
+                throw new IOException("Not a snapshot: " + newest);
+            }
+            maxMatchId = in.readLong();
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                MatchState state = new MatchState(in.readLong());
+                state.boardSize = in.readShort();
+                state.winLength = in.readShort();
+                state.moves = in.readShort();
+                state.lastMover = (char) in.readByte();
+                state.result = (char) in.readByte();
+                state.tokenX = in.readLong();
+                state.tokenO = in.readLong();
+                state.cells = new byte[state.boardSize * state.boardSize];
+                in.readFully(state.cells);
+                live.put(state.matchId, state);
+            }
+        }
+        return newestIndex;
+    }
+
+    // What the journal knows about one match in progress
+    public static final class MatchState {
+        public final long matchId;
+        public int boardSize;
+        public int winLength;
+        public byte[] cells; // 'X', 'O' or 0 per cell, row by row
+        public int moves;
+        public char lastMover = ' ';
+        public char result = ' '; // Last RESULT mark, ' ' while a game is in progress
+        public long tokenX;
+        public long tokenO;
+
+        MatchState(long matchId) {
+            this.matchId = matchId;
+        }
+    }
+
+    private void openSegment() throws IOException {
+        Path file = directory.resolve(String.format("journal-%06d.log", segmentNumber));
+        segment = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        segmentBytes = 0;
+    }
+
+    // Reading
+
+    public interface RecordHandler {
+        void record(int type, char mark, int cell, int aux, long matchId, long time);
+    }
+
+    // Streams every record in the directory, oldest first, with a fixed
+    // read buffer. A torn record at the end of a file is skipped.
+    public static void replay(Path directory, RecordHandler handler) throws IOException {
+        for (Path file : segments(directory)) {
+            replayFile(file, handler);
+        }
+    }
+
+    private static void replayFile(Path file, RecordHandler handler) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(4096 * RECORD_SIZE);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (channel.read(buffer) > 0 || buffer.position() >= RECORD_SIZE) {
+                buffer.flip();
+                while (buffer.remaining() >= RECORD_SIZE) {
+                    readRecord(buffer, handler);
+                }
+                buffer.compact();
+            }
+        }
+    }
+
+    private static void readRecord(ByteBuffer buffer, RecordHandler handler) {
+        int type = buffer.get() & 0xFF;
+        char mark = (char) (buffer.get() & 0xFF);
+        int cell = buffer.getShort() & 0xFFFF;
+        int aux = buffer.getShort() & 0xFFFF;
+        buffer.getShort();
+        long matchId = buffer.getLong();
+        long time = buffer.getLong();
+        handler.record(type, mark, cell, aux, matchId, time);
+    }
+
+    static List<Path> segments(Path directory) throws IOException {
+        List<Path> files = new ArrayList<>();
+        if (!Files.isDirectory(directory)) {
+            return files;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "journal-*.log")) {
+            for (Path file : stream) {
+                files.add(file);
+            }
+        }
+        files.sort(null); // Zero-padded numbers sort by name
+        return files;
+    }
+
+    private static int segmentIndex(Path file) {
+        String name = file.getFileName().toString();
+        return Integer.parseInt(name.substring("journal-".length(), name.length() - ".log".length()));
+    }
+}
\ No newline at end of file
@@ -0,0 +1,387 @@
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Front door for a cluster of GameServer nodes, each started with
+// --node=K/N. Clients connect here exactly as they would to a single
+// server. The router reads only the first message, picks a node and from
+// then on copies bytes both ways without looking at them.
+//
+// Match ids are partitioned between the nodes (MatchRegistry.nodeForMatch),
+// so a RESUME token or a WATCH id names its node with no lookup. New
+// players are where the nodes share a lobby: the router watches every
+// node's lobby (see Lobby) and sends each new player to a node where
+// someone is waiting for an opponent, or else to the least loaded node.
+// That includes players a node put in its lobby on its own, e.g. after a
+// resume for a match that had ended, and drops those paired with a bot.
+//
+// With --redirect the router leaves the data path altogether: it answers
+// the first message with REDIRECT host:port and closes, and the client
+// (GameClient follows redirects) repeats that message to the node itself.
+// Node addresses must then be reachable by clients.
+//
+// java GameRouter [port] --nodes=host:port,host:port,... [--redirect]
+public class GameRouter {
+    private static final int MAX_HELLO_BYTES = 2048;
+    private static final long NODE_RETRY_MILLIS = 2000; // How long a node that refused a connection is skipped
+
+    private final List<Node> nodes;
+    private final boolean redirect;
+
+    public GameRouter(List<Node> nodes, boolean redirect) {
+        this.nodes = nodes;
+        this.redirect = redirect;
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = 12345;
+        List<Node> nodes = new ArrayList<>();
+        boolean redirect = false;
+        for (String arg : args) {
+            if (arg.equals("--redirect")) {
+                redirect = true;
+            } else if (arg.startsWith("--nodes=")) {
+                for (String address : arg.substring("--nodes=".length()).split(",")) {
+                    int colon = address.lastIndexOf(':');
+                    try {
+                        nodes.add(new Node(address.substring(0, colon), Integer.parseInt(address.substring(colon + 1))));
+                    } catch (RuntimeException e) {
+                        System.err.println("Invalid node address " + address + ". Expected host:port");
+                        System.exit(1);
+                    }
+                }
+            } else {
+                try {
+                    port = Integer.parseInt(arg);
+                } catch (NumberFormatException e) {
+                    System.err.println("Invalid port number. Using default: 12345");
+                }
+            }
+        }
+        if (nodes.isEmpty()) {
+            System.err.println("Usage: java GameRouter [port] --nodes=host:port,host:port,... [--redirect]");
+            System.exit(1);
+        }
+
+        GameRouter router = new GameRouter(nodes, redirect);
+        router.watchLobbies();
+        try (ServerSocket serverSocket = new ServerSocket(port, 1024)) {
+            System.out.println("Router on port " + port + " for " + nodes.size() + " nodes: " + nodes
+                    + (redirect ? ", redirecting" : ", relaying"));
+            while (true) {
+                Socket client = serverSocket.accept();
+                Thread.ofVirtual().name("route").start(() -> router.serve(client));
+            }
+        }
+    }
+
+    private void serve(Socket client) {
+        Link link = new Link(client);
+        try {
+            client.setTcpNoDelay(true);
+            Hello hello = readHello(client.getInputStream());
+            if (hello == null) {
+                client.close();
+                return;
+            }
+            link.hello = hello.bytes;
+            if (redirect) {
+                Node node = hello.matchId > 0
+                        ? nodes.get(MatchRegistry.nodeForMatch(hello.matchId, nodes.size()))
+                        : lobbyNode();
+                if (node == null) {
+                    client.close();
+                    return;
+                }
+                link.redirect(node);
+                return;
+            }
+            if (hello.matchId > 0) {
+                // Resume or spectate: only the owning node knows the match
+                Node node = nodes.get(MatchRegistry.nodeForMatch(hello.matchId, nodes.size()));
+                if (!link.connect(node)) {
+                    client.close();
+                    return;
+                }
+            } else {
+                Node node = lobbyNode();
+                while (node != null && !link.connect(node)) {
+                    notSent(node);
+                    node = lobbyNode();
+                }
+                if (node == null) {
+                    client.close();
+                    return;
+                }
+            }
+            link.relay();
+        } catch (IOException e) {
+            link.close();
+        }
+    }
+
+    // Node for a player who wants an opponent: one with an odd number of
+    // players waiting, so one of them is left without a partner, else the
+    // node with the fewest players to wait for the next one. The player is
+    // counted at once; the node's next report replaces the estimate.
+    private synchronized Node lobbyNode() {
+        long now = System.nanoTime();
+        Node best = null;
+        for (Node node : nodes) {
+            if (!node.isUp(now)) {
+                continue;
+            }
+            if (node.waiting % 2 == 1) {
+                best = node;
+                break;
+            }
+            if (best == null || node.players < best.players) {
+                best = node;
+            }
+        }
+        if (best != null) {
+            best.waiting++;
+            best.players++;
+        }
+        return best;
+    }
+
+    // The node lobbyNode() chose refused the connection
+    private synchronized void notSent(Node node) {
+        node.waiting = Math.max(0, node.waiting - 1);
+        node.players = Math.max(0, node.players - 1);
+    }
+
+    private synchronized void lobbyReport(Node node, int waiting, int players) {
+        node.waiting = waiting;
+        node.players = players;
+    }
+
+    private void watchLobbies() {
+        for (Node node : nodes) {
+            Thread.ofVirtual().name("lobby-watch").start(() -> watchLobby(node));
+        }
+    }
+
+    // Keeps node's lobby figures current over a connection of its own,
+    // reopened whenever it drops. While it is down, lobbyNode() works from
+    // the router's own counts.
+    private void watchLobby(Node node) {
+        while (true) {
+            try (Socket socket = new Socket()) {
+                socket.connect(new InetSocketAddress(node.host, node.port), 2000);
+                OutputStream out = socket.getOutputStream();
+                out.write("LOBBY\n".getBytes(StandardCharsets.UTF_8));
+                BufferedReader in = new BufferedReader(
+                        new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+                String line;
+                while ((line = in.readLine()) != null) {
+                    if (line.equals("PING")) {
+                        out.write("PONG\n".getBytes(StandardCharsets.UTF_8)); // Or the node's idle check closes us
+                    } else if (line.startsWith("LOBBY ")) {
+                        String[] figures = line.split(" ");
+                        try {
+                            lobbyReport(node, Integer.parseInt(figures[1]), Integer.parseInt(figures[2]));
+                        } catch (RuntimeException e) {
+                            System.err.println("Bad lobby report from " + node + ": " + line);
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                // Node down or restarting; try again shortly
+            }
+            try {
+                Thread.sleep(NODE_RETRY_MILLIS);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    // The first message of a connection, exactly as it arrived, plus the
+    // match it names (0 for none)
+    private record Hello(byte[] bytes, long matchId) {
+    }
+
+    private static Hello readHello(InputStream in) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        int first = in.read();
+        if (first == -1) {
+            return null;
+        }
+        bytes.write(first);
+        String command;
+        String text;
+        if (first == BinaryProtocol.MAGIC) {
+            byte[] header = in.readNBytes(BinaryProtocol.HEADER_SIZE);
+            if (header.length < BinaryProtocol.HEADER_SIZE) {
+                return null;
+            }
+            int length = BinaryProtocol.cell(header, 0);
+            byte[] payload = in.readNBytes(Math.min(length, BinaryProtocol.MAX_PAYLOAD));
+            bytes.write(header);
+            bytes.write(payload);
+            int opcode = BinaryProtocol.opcode(header, 0);
+            command = opcode == BinaryProtocol.WATCH ? "WATCH" : opcode == BinaryProtocol.NAME ? "NAME" : "";
+            text = new String(payload, StandardCharsets.UTF_8);
+        } else {
+            int c = first;
+            while (c != '\n') {
+                c = in.read();
+                if (c == -1 || bytes.size() > MAX_HELLO_BYTES) {
+                    return null;
+                }
+                bytes.write(c);
+            }
+            String line = bytes.toString(StandardCharsets.UTF_8).trim();
+            int space = line.indexOf(' ');
+            command = space < 0 ? line : line.substring(0, space);
+            text = space < 0 ? "" : line.substring(space + 1);
+        }
+        return new Hello(bytes.toByteArray(), helloMatchId(command, text));
+    }
+
+    // "WATCH <id>" and "NAME <name> RESUME <id>-<secret>" belong to a match
+    private static long helloMatchId(String command, String text) {
+        String id = null;
+        if (command.equals("WATCH")) {
+            id = text.trim();
+        } else if (command.equals("NAME")) {
+            int resume = text.lastIndexOf(" RESUME ");
+            int dash = resume < 0 ? -1 : text.indexOf('-', resume);
+            if (dash > 0) {
+                id = text.substring(resume + 8, dash);
+            }
+        }
+        if (id == null) {
+            return 0;
+        }
+        try {
+            return Math.max(0, Long.parseLong(id));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    // One client connection and the node connection it is relayed to
+    private static final class Link {
+        private final Socket client;
+        private Socket upstream;
+        private byte[] hello;
+
+        Link(Socket client) {
+            this.client = client;
+        }
+
+        // Opens the node connection and replays the first message to it.
+        // False if the node refused, which takes it out of rotation briefly.
+        boolean connect(Node target) {
+            Socket socket = new Socket();
+            try {
+                socket.setTcpNoDelay(true);
+                socket.connect(new InetSocketAddress(target.host, target.port), 2000);
+                socket.getOutputStream().write(hello);
+            } catch (IOException e) {
+                target.retryAt = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(NODE_RETRY_MILLIS);
+                target.down = true;
+                System.err.println("Node " + target + " unavailable: " + e.getMessage());
+                try {
+                    socket.close();
+                } catch (IOException ignored) {
+                }
+                return false;
+            }
+            target.down = false;
+            upstream = socket;
+            return true;
+        }
+
+        // Tells the client where to go instead; GameClient reconnects there
+        // and repeats its first message
+        void redirect(Node target) throws IOException {
+            String address = target.host + ":" + target.port;
+            byte[] message;
+            if ((hello[0] & 0xFF) == BinaryProtocol.MAGIC) {
+                OutputBuffer frame = new OutputBuffer(64);
+                BinaryProtocol.writeTextFrame(frame, BinaryProtocol.REDIRECT, 0, 0, address);
+                message = Arrays.copyOf(frame.array(), frame.size());
+            } else {
+                message = ("REDIRECT " + address + "\n").getBytes(StandardCharsets.UTF_8);
+            }
+            try {
+                client.getOutputStream().write(message);
+            } finally {
+                client.close();
+            }
+        }
+
+        // Copies both directions until either side closes, then closes both
+        void relay() throws IOException {
+            Thread downstream = Thread.ofVirtual().name("relay").start(() -> copy(upstream, client));
+            copy(client, upstream);
+            try {
+                downstream.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private void copy(Socket from, Socket to) {
+            try {
+                from.getInputStream().transferTo(to.getOutputStream());
+            } catch (IOException ignored) {
+                // Reset or closed by the other direction
+            }
+            close();
+        }
+
+        synchronized void close() {
+            try {
+                client.close();
+            } catch (IOException ignored) {
+            }
+            if (upstream != null) {
+                try {
+                    upstream.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    private static final class Node {
+        private final String host;
+        private final int port;
+        // From the node's last lobby report, plus players sent here since;
+        // guarded by the router
+        private int waiting; // Players not yet in a match
+        private int players; // Connected players
+        private volatile boolean down = false; // Refused a connection; skipped until retryAt
+        private volatile long retryAt;
+
+        Node(String host, int port) {
+            this.host = host;
+            this.port = port;
+        }
+
+        boolean isUp(long now) {
+            return !down || now - retryAt >= 0;
+        }
+
+        @Override
+        public String toString() {
+            return host + ":" + port;
+        }
+    }
+}
\ No newline at end of file
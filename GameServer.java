@@ -1,105 +1,210 @@
+import com.sun.net.httpserver.HttpServer;
 import java.io.*;
 import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 public class GameServer {
-    // Game board to track state
-    private static char[][] board = new char[3][3];
+    // Registry of all active matches, each with its own board
+    private static MatchRegistry registry;
+    private static Lobby lobby;
+    private static ExecutorService writerThreads;
     private static int port = 12345;
+    private static String engine = "blocking";
+    private static int eventLoops = Runtime.getRuntime().availableProcessors();
+    private static int boardSize = 3;
+    private static int winLength = 3;
+    private static int metricsPort = 0; // 0 leaves the metrics endpoint off
+    private static int botAfterSeconds = 0; // 0 never seats a bot
+    private static int thinkMillis = 500; // Solver budget per bot move or hint on large boards
+    private static String journalDirectory = null; // No journal unless --journal is given
+    private static String ratingsFile = null; // Ratings are kept in memory only unless --ratings is given
+    private static int graceSeconds = 30; // How long a dropped or recovered player's seat is held
+    private static int nodeIndex = 0; // This server's place in a cluster behind a GameRouter
+    private static int nodeCount = 1;
+    private static int chatRate = 5; // Chat messages per second each player may send, in bursts of twice that
+    private static int idleSeconds = 60; // Silence before a connection is closed; pinged after a third of it
+    private static int turnSeconds = 0; // Time per move before forfeiting; 0 is unlimited
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        // Parse command line arguments:
+        // [port] [--engine=blocking|virtual|nio] [--loops=N] [--board=N] [--win=K] [--metrics=PORT] [--bot-after=SECONDS] [--think=MS] [--journal=DIR] [--grace=SECONDS] [--chat-rate=N] [--node=K/N] [--ratings=FILE] [--idle=SECONDS] [--turn-time=SECONDS]
+        for (String arg : args) {
+            if (arg.startsWith("--engine=")) {
+                engine = arg.substring("--engine=".length());
+            } else if (arg.startsWith("--loops=")) {
+                eventLoops = Math.max(1, intOption(arg, "--loops=", eventLoops));
+            } else if (arg.startsWith("--board=")) {
+                boardSize = intOption(arg, "--board=", boardSize);
+            } else if (arg.startsWith("--win=")) {
+                winLength = intOption(arg, "--win=", winLength);
+            } else if (arg.startsWith("--metrics=")) {
+                metricsPort = intOption(arg, "--metrics=", metricsPort);
+            } else if (arg.startsWith("--bot-after=")) {
+                botAfterSeconds = intOption(arg, "--bot-after=", botAfterSeconds);
+            } else if (arg.startsWith("--think=")) {
+                thinkMillis = intOption(arg, "--think=", thinkMillis);
+            } else if (arg.startsWith("--journal=")) {
+                journalDirectory = arg.substring("--journal=".length());
+            } else if (arg.startsWith("--grace=")) {
+                graceSeconds = intOption(arg, "--grace=", graceSeconds);
+            } else if (arg.startsWith("--ratings=")) {
+                ratingsFile = arg.substring("--ratings=".length());
+            } else if (arg.startsWith("--node=")) {
+                String[] node = arg.substring("--node=".length()).split("/");
+                try {
+                    nodeIndex = Integer.parseInt(node[0]);
+                    nodeCount = node.length == 2 ? Integer.parseInt(node[1]) : -1;
+                } catch (NumberFormatException e) {
+                    nodeCount = -1;
+                }
+            } else if (arg.startsWith("--idle=")) {
+                idleSeconds = Math.max(0, intOption(arg, "--idle=", idleSeconds));
+            } else if (arg.startsWith("--turn-time=")) {
+                turnSeconds = Math.max(0, intOption(arg, "--turn-time=", turnSeconds));
+            } else if (arg.startsWith("--chat-rate=")) {
+                chatRate = Math.max(1, intOption(arg, "--chat-rate=", chatRate));
+            } else {
+                try {
+                    port = Integer.parseInt(arg);
+                } catch (NumberFormatException e) {
+                    System.err.println("Invalid port number. Using default: 12345");
+                }
+            }
+        }
 
-    public static void main(String[] args) throws IOException {
-        // Parse command line arguments for port
-        if (args.length > 0) {
-            try {
-                port = Integer.parseInt(args[0]);
-            } catch (NumberFormatException e) {
-                System.err.println("Invalid port number. Using default: 12345");
+        try {
+            registry = new MatchRegistry(boardSize, winLength);
+            registry.setThinkMillis(thinkMillis);
+            registry.setGraceMillis(graceSeconds * 1000L);
+            registry.setIdleMillis(idleSeconds * 1000L);
+            registry.setTurnMillis(turnSeconds * 1000L);
+            registry.setNode(nodeIndex, nodeCount);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        }
+        if (nodeCount > 1) {
+            System.out.println("Cluster node " + nodeIndex + " of " + nodeCount);
+        }
+        if (journalDirectory != null) {
+            long recoveryStart = System.nanoTime();
+            GameJournal journal = GameJournal.open(Path.of(journalDirectory));
+            registry.setJournal(journal);
+            int recovered = registry.recover(journal);
+            if (recovered > 0) {
+                System.out.println("Recovered " + recovered + " matches in "
+                        + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - recoveryStart) + " ms");
             }
+            // Ctrl+C or a normal kill still writes out the last batch
+            Runtime.getRuntime().addShutdownHook(new Thread(journal::shutdown, "journal-shutdown"));
+            System.out.println("Journaling games to " + journalDirectory);
+        }
+        if (ratingsFile != null) {
+            long loadStart = System.nanoTime();
+            Ratings ratings = Ratings.open(Path.of(ratingsFile));
+            registry.setRatings(ratings);
+            Runtime.getRuntime().addShutdownHook(new Thread(ratings::shutdown, "ratings-shutdown"));
+            System.out.println("Loaded " + ratings.players() + " ratings from " + ratingsFile + " in "
+                    + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - loadStart) + " ms");
+        } else {
+            registry.setRatings(Ratings.inMemory());
+        }
+        lobby = new Lobby(registry, botAfterSeconds * 1000L);
+        lobby.chat().setRate(chatRate, 2 * chatRate);
+        lobby.start();
+        if (metricsPort > 0) {
+            startMetricsEndpoint(metricsPort);
         }
 
-        // Initialize board to empty
-        resetBoard();
+        if (engine.equals("nio")) {
+            new NioServer(port, eventLoops, lobby).run();
+            return;
+        }
 
-        ServerSocket serverSocket = new ServerSocket(port);
-        System.out.println("Server started on port " + port + "...");
+        // Blocking engines run one thread per player; "virtual" makes those threads cheap
+        boolean virtual = engine.equals("virtual");
+        ExecutorService playerThreads = virtual
+                ? Executors.newVirtualThreadPerTaskExecutor()
+                : Executors.newThreadPerTaskExecutor(Thread::new);
+        // Socket writes run here so a slow reader only stalls its own writer
+        writerThreads = virtual
+                ? Executors.newVirtualThreadPerTaskExecutor()
+                : Executors.newCachedThreadPool();
+
+        ServerSocket serverSocket = new ServerSocket(port, 1024);
+        System.out.println("Server started on port " + port + (virtual ? " using virtual threads..." : "..."));
         System.out.println("Server IP: " + InetAddress.getLocalHost().getHostAddress());
 
         try {
-            while (true) {
-                Socket socket1 = serverSocket.accept();
-                System.out.println("Player X connected from " + socket1.getInetAddress());
-                PlayerHandler playerX = new PlayerHandler(socket1, 'X', board);
-
-                Socket socket2 = serverSocket.accept();
-                System.out.println("Player O connected from " + socket2.getInetAddress());
-                PlayerHandler playerO = new PlayerHandler(socket2, 'O', board);
-
-                playerX.setOpponent(playerO);
-                playerO.setOpponent(playerX);
-
-                playerX.start();
-                playerO.start();
-
-                // Inform players of their symbols
-                playerX.sendMessage("You are X");
-                playerO.sendMessage("You are O");
-
-                // Start the game
-                playerX.sendMessage("Your turn");
-                playerO.sendMessage("Opponent's turn");
-
-                // Create a game monitor thread to handle restart requests
-                new GameMonitorThread(playerX, playerO).start();
+            if (virtual) {
+                Thread acceptor = Thread.ofVirtual().name("acceptor").start(() -> acceptPlayers(serverSocket, playerThreads));
+                acceptor.join();
+            } else {
+                acceptPlayers(serverSocket, playerThreads);
             }
         } finally {
             serverSocket.close();
+            playerThreads.shutdown();
+            writerThreads.shutdown();
             System.out.println("Server shutdown.");
         }
     }
 
-    public static void resetBoard() {
-        for (int i = 0; i < 3; i++) {
-            for (int j = 0; j < 3; j++) {
-                board[i][j] = ' ';
+    // Text snapshot of ServerMetrics at http://127.0.0.1:PORT/metrics. Bound to
+    // loopback only; put a proxy in front to scrape it from elsewhere.
+    private static void startMetricsEndpoint(int metricsPort) throws IOException {
+        HttpServer http = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), metricsPort), 0);
+        http.createContext("/metrics", exchange -> {
+            byte[] body = ServerMetrics.render(registry, lobby).getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
             }
-        }
+        });
+        http.start();
+        System.out.println("Metrics at http://127.0.0.1:" + metricsPort + "/metrics");
     }
 
-    // Inner class to monitor game state and handle restarts
-    private static class GameMonitorThread extends Thread {
-        private PlayerHandler playerX;
-        private PlayerHandler playerO;
+    private static int intOption(String arg, String option, int defaultValue) {
+        try {
+            return Integer.parseInt(arg.substring(option.length()));
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid option " + arg + ". Using default: " + defaultValue);
+            return defaultValue;
+        }
+    }
 
-        public GameMonitorThread(PlayerHandler playerX, PlayerHandler playerO) {
-            this.playerX = playerX;
-            this.playerO = playerO;
+    private static void acceptPlayers(ServerSocket serverSocket, ExecutorService playerThreads) {
+        try {
+            while (true) {
+                // Hand the socket off immediately; the player thread sets up
+                // its streams and joins the lobby once its NAME arrives
+                Socket socket = serverSocket.accept();
+                System.out.println("Player connected from " + socket.getInetAddress());
+                playerThreads.execute(() -> servePlayer(socket));
+            }
+        } catch (IOException e) {
+            System.err.println("Accept loop stopped: " + e.getMessage());
         }
+    }
 
-        @Override
-        public void run() {
+    private static void servePlayer(Socket socket) {
+        PlayerHandler player;
+        try {
+            player = new PlayerHandler(socket, lobby, writerThreads);
+        } catch (IOException e) {
+            System.out.println("Error setting up connection: " + e.getMessage());
             try {
-                // Wait for both players to be ready for a new game
-                while (!playerX.isDisconnected() && !playerO.isDisconnected()) {
-                    if (playerX.wantsRestart() && playerO.wantsRestart()) {
-                        // Reset the game
-                        resetBoard();
-                        playerX.resetGame();
-                        playerO.resetGame();
-
-                        // Start a new game
-                        playerX.sendMessage("RESET_GAME");
-                        playerO.sendMessage("RESET_GAME");
-
-                        // X always starts
-                        playerX.sendMessage("Your turn");
-                        playerO.sendMessage("Opponent's turn");
-                    }
-
-                    // Sleep to prevent CPU hogging
-                    Thread.sleep(500);
-                }
-            } catch (InterruptedException e) {
-                System.out.println("Game monitor interrupted");
+                socket.close();
+            } catch (IOException ignored) {
             }
+            return;
         }
+        player.run();
     }
 }
\ No newline at end of file
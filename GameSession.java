@@ -0,0 +1,544 @@
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.IntConsumer;
+
+// State machine for one match. Every event (move, chat, restart vote,
+// disconnect) goes through a mailbox and is applied by exactly one thread
+// at a time: whichever caller finds the mailbox idle drains it, everyone
+// else just enqueues and returns. Turn, result and restart state therefore
+// have a single writer, and no handler thread ever waits on a lock.
+//
+// With a turn limit set, the player on move who lets it run out forfeits
+// the game (but not the match; both can still restart).
+//
+// Each seat has a random token. When a player's connection drops, an
+// AbsentPlayer holds the seat for the registry's grace period; presenting
+// the token on a new connection takes the seat back (see resume()). Matches
+// recovered from the journal after a restart start with both seats held.
+public class GameSession {
+    private final long matchId;
+    // Swapped only by the draining thread when a player resumes; volatile
+    // for the handler threads that call opponentOf()
+    private volatile PlayerHandler playerX;
+    private volatile PlayerHandler playerO;
+    // Who each seat belongs to, kept while an AbsentPlayer holds it; null
+    // in a recovered match until that player resumes
+    private String nameX;
+    private String nameO;
+    private final long tokenX;
+    private final long tokenO;
+    private final MatchRegistry registry;
+    private final ConcurrentLinkedQueue<Runnable> mailbox = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean draining = new AtomicBoolean(false);
+    private final ChatRoom chatRoom; // Batches chat before it reaches the mailbox
+
+    // Game board owned by this match only. All fields below are only
+    // touched by the thread currently draining the mailbox.
+    private final Board board;
+    private char currentTurn = 'X'; // X always starts
+    private boolean gameEnded = false;
+    private boolean xWantsRestart = false;
+    private boolean oWantsRestart = false;
+    private long restartRequestedAt = 0;
+    private int movesPlayed = 0; // In the current game
+    private char lastResult = ' '; // Winning mark or 'D' once the current game is over
+    private TimerWheel.Timeout expiryX; // Pending while an AbsentPlayer holds the seat
+    private TimerWheel.Timeout expiryO;
+    private TimerWheel.Timeout turnClock; // Pending while someone is on move, if turns are timed
+    private int turnsStarted = 0; // Tells a turn clock that fired late from the current one
+    private SpectatorFeed spectators; // Created by the first WATCH
+    private volatile boolean closed = false;
+
+    public GameSession(long matchId, PlayerHandler playerX, PlayerHandler playerO, Board board,
+                       MatchRegistry registry, long tokenX, long tokenO) {
+        this.matchId = matchId;
+        this.board = board;
+        this.playerX = playerX;
+        this.playerO = playerO;
+        this.nameX = playerX instanceof AbsentPlayer ? null : playerX.getPlayerName();
+        this.nameO = playerO instanceof AbsentPlayer ? null : playerO.getPlayerName();
+        this.registry = registry;
+        this.tokenX = tokenX;
+        this.tokenO = tokenO;
+        this.chatRoom = new ChatRoom(registry, ChatService.BATCH_WINDOW_MILLIS,
+                lines -> submit(() -> onChat(lines)));
+    }
+
+    // Puts a match recovered from the journal back where it stopped. Called
+    // before the session is registered, so nothing else can see it yet.
+    void restore(GameJournal.MatchState state) {
+        int size = board.size();
+        for (int cell = 0; cell < state.cells.length; cell++) {
+            if (state.cells[cell] != 0) {
+                board.place(cell / size, cell % size, (char) state.cells[cell]);
+            }
+        }
+        movesPlayed = state.moves;
+        currentTurn = state.lastMover == 'X' ? 'O' : 'X';
+        lastResult = state.result;
+        gameEnded = lastResult != ' ';
+        holdSeat('X');
+        holdSeat('O');
+        startTurnClock();
+    }
+
+    public long getMatchId() {
+        return matchId;
+    }
+
+    public int getBoardSize() {
+        return board.size();
+    }
+
+    public PlayerHandler opponentOf(PlayerHandler player) {
+        return player == playerX ? playerO : playerX;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    // 'X' or 'O' for the seat this token belongs to, ' ' for neither
+    public char seatForToken(long token) {
+        if (token == tokenX) {
+            return 'X';
+        }
+        return token == tokenO ? 'O' : ' ';
+    }
+
+    private String tokenFor(char mark) {
+        return matchId + "-" + Long.toHexString(mark == 'X' ? tokenX : tokenO);
+    }
+
+    public void start() {
+        submit(this::onStart);
+    }
+
+    // A formatted chat line for both players and the spectators; delivered
+    // together with whatever else arrives in the same batch window
+    public void chat(String line) {
+        chatRoom.post(line);
+    }
+
+    public void makeMove(PlayerHandler player, int row, int col) {
+        long receivedAt = System.nanoTime();
+        submit(() -> onMove(player, row, col, receivedAt));
+    }
+
+    public void requestRestart(PlayerHandler player) {
+        submit(() -> onRestartRequest(player));
+    }
+
+    public void playerDisconnected(PlayerHandler player) {
+        submit(() -> onDisconnect(player));
+    }
+
+    // Seats player as mark in place of whoever holds that seat now
+    public void resume(PlayerHandler player, char mark) {
+        submit(() -> onResume(player, mark));
+    }
+
+    // Adds a spectator; from then on it sees every move, result and chat
+    public void watch(PlayerHandler watcher) {
+        submit(() -> onWatch(watcher));
+    }
+
+    public void requestHint(PlayerHandler player) {
+        suggestMove(player, cell -> {
+            player.sendHint(cell / board.size(), cell % board.size());
+            player.flush();
+        });
+    }
+
+    // Best cell for player if it is their turn. onCell runs on this match's
+    // thread for 3x3 (a table lookup), or on a solver thread once the search
+    // on a larger board is done; it is not called if there is no move.
+    public void suggestMove(PlayerHandler player, IntConsumer onCell) {
+        submit(() -> onSuggest(player, onCell));
+    }
+
+    private void submit(Runnable event) {
+        mailbox.add(event);
+        // Re-check after releasing: an event added while we were finishing
+        // would otherwise wait until the next submit
+        while (!mailbox.isEmpty() && draining.compareAndSet(false, true)) {
+            try {
+                Runnable next;
+                while ((next = mailbox.poll()) != null) {
+                    try {
+                        next.run();
+                    } catch (RuntimeException e) {
+                        System.err.println("Error in match " + matchId + ": " + e);
+                    }
+                }
+            } finally {
+                draining.set(false);
+            }
+        }
+    }
+
+    private void onStart() {
+        registry.journal().start(matchId, board.size(), board.winLength());
+        registry.journal().token(matchId, 'X', tokenX);
+        registry.journal().token(matchId, 'O', tokenO);
+
+        // Clients size their grid from this before the first move
+        playerX.sendBoard(board.size(), board.winLength());
+        playerO.sendBoard(board.size(), board.winLength());
+
+        // Inform players of their symbols
+        playerX.sendAssignment();
+        playerO.sendAssignment();
+        playerX.sendToken(tokenFor('X'));
+        playerO.sendToken(tokenFor('O'));
+
+        // Start the game
+        playerX.sendTurn(true);
+        playerO.sendTurn(false);
+        flushBoth();
+        startTurnClock();
+    }
+
+    private void onChat(List<String> lines) {
+        if (closed) {
+            return;
+        }
+        for (String line : lines) {
+            playerX.sendChat(line);
+            playerO.sendChat(line);
+            if (spectators != null) {
+                spectators.chat(line);
+            }
+        }
+        flushBoth();
+    }
+
+    private void onWatch(PlayerHandler watcher) {
+        if (closed) {
+            watcher.sendChat("System: That match is over.");
+            watcher.flush();
+            return;
+        }
+        if (spectators == null) {
+            spectators = new SpectatorFeed(matchId, board, gameEnded ? '-' : currentTurn,
+                    lastResult, gameEnded ? resultText() : null, registry.fanOut());
+        }
+        watcher.startWatching(spectators);
+        spectators.join(watcher);
+    }
+
+    private String resultText() {
+        return lastResult == 'D' ? "Draw!" : nameOf(lastResult) + " wins!";
+    }
+
+    private String nameOf(char mark) {
+        String name = mark == 'X' ? nameX : nameO;
+        return name != null ? name : "Player " + mark;
+    }
+
+    // Each transition ends with one flush per player, so everything it
+    // produced (move, result, turn) leaves as a single write
+    private void flushBoth() {
+        playerX.flush();
+        playerO.flush();
+    }
+
+    // A handler replaced by a resumed connection can still have events in
+    // flight; only the players in the seats now count
+    private boolean isSeated(PlayerHandler player) {
+        return player == playerX || player == playerO;
+    }
+
+    private void onMove(PlayerHandler player, int row, int col, long receivedAt) {
+        char mark = player.getMark();
+        if (gameEnded || closed || currentTurn != mark || !isSeated(player)) {
+            return;
+        }
+
+        // Check if valid move (in bounds and empty cell)
+        if (!board.inBounds(row, col) || !board.isEmpty(row, col)) {
+            return;
+        }
+
+        // Update board state and check for win or draw
+        char gameResult = board.place(row, col, mark);
+        movesPlayed++;
+        registry.journal().move(matchId, mark, row * board.size() + col, movesPlayed);
+
+        // Broadcast move to both players
+        playerX.sendMove(mark, row, col, board.size());
+        playerO.sendMove(mark, row, col, board.size());
+
+        if (gameResult == mark) {
+            // Win condition
+            gameEnded = true;
+            lastResult = mark;
+            ServerMetrics.gamesCompleted.increment();
+            registry.journal().result(matchId, mark, movesPlayed);
+            registry.ratings().gameOver(playerX, nameX, playerO, nameO, mark);
+            String winText = player.getPlayerName() + " wins!";
+            playerX.sendGameOver(mark, winText);
+            playerO.sendGameOver(mark, winText);
+        } else if (gameResult == 'D') {
+            // Draw condition
+            gameEnded = true;
+            lastResult = 'D';
+            ServerMetrics.gamesCompleted.increment();
+            registry.journal().result(matchId, 'D', movesPlayed);
+            registry.ratings().gameOver(playerX, nameX, playerO, nameO, 'D');
+            playerX.sendGameOver('D', "Draw!");
+            playerO.sendGameOver('D', "Draw!");
+        } else {
+            // Continue game, switch turns
+            currentTurn = (mark == 'X') ? 'O' : 'X';
+            player.sendTurn(false);
+            opponentOf(player).sendTurn(true);
+        }
+        flushBoth();
+        startTurnClock();
+        if (spectators != null) {
+            // Handed off here; encoding and delivery happen on the fan-out pool
+            spectators.move(mark, row * board.size() + col, gameEnded ? '-' : currentTurn);
+            if (gameEnded) {
+                spectators.gameOver(lastResult, resultText());
+            }
+        }
+        ServerMetrics.moves.increment();
+        ServerMetrics.moveLatencyMicros.record(ServerMetrics.micros(receivedAt));
+    }
+
+    private void onRestartRequest(PlayerHandler player) {
+        if (!gameEnded || closed || !isSeated(player)) {
+            return;
+        }
+
+        if (!xWantsRestart && !oWantsRestart) {
+            restartRequestedAt = System.nanoTime();
+        }
+        if (player == playerX) {
+            xWantsRestart = true;
+        } else {
+            oWantsRestart = true;
+        }
+        player.sendChat("System: Waiting for opponent to restart...");
+
+        // Notify opponent
+        PlayerHandler opponent = opponentOf(player);
+        opponent.sendChat("System: " + player.getPlayerName() + " wants to restart the game.");
+
+        if (xWantsRestart && oWantsRestart) {
+            playerX.sendChat("System: Both players ready. Starting new game...");
+            playerO.sendChat("System: Both players ready. Starting new game...");
+            startNewGame();
+            ServerMetrics.restartLatencyMicros.record(ServerMetrics.micros(restartRequestedAt));
+        }
+        flushBoth();
+    }
+
+    private void startNewGame() {
+        // Reset the game
+        board.reset();
+        currentTurn = 'X';
+        gameEnded = false;
+        lastResult = ' ';
+        xWantsRestart = false;
+        oWantsRestart = false;
+        movesPlayed = 0;
+        registry.journal().start(matchId, board.size(), board.winLength());
+
+        // Start a new game
+        playerX.sendReset();
+        playerO.sendReset();
+        if (spectators != null) {
+            spectators.reset();
+        }
+
+        // X always starts
+        playerX.sendTurn(true);
+        playerO.sendTurn(false);
+        startTurnClock();
+    }
+
+    // Restarts the clock for whoever is on move now; stops it once the game is over
+    private void startTurnClock() {
+        cancel(turnClock);
+        turnClock = null;
+        long limit = registry.getTurnMillis();
+        if (limit > 0 && !gameEnded && !closed) {
+            int turn = ++turnsStarted;
+            turnClock = registry.schedule(() -> submit(() -> onTurnTimeout(turn)), limit);
+        }
+    }
+
+    private void onTurnTimeout(int turn) {
+        if (turn != turnsStarted || gameEnded || closed) {
+            return;
+        }
+        PlayerHandler loser = currentTurn == 'X' ? playerX : playerO;
+        if (loser instanceof AbsentPlayer) {
+            return; // The grace period decides; a resumed player gets a fresh clock
+        }
+        char winner = currentTurn == 'X' ? 'O' : 'X';
+        gameEnded = true;
+        lastResult = winner;
+        turnClock = null;
+        ServerMetrics.gamesCompleted.increment();
+        ServerMetrics.turnsTimedOut.increment();
+        registry.journal().result(matchId, winner, movesPlayed);
+        registry.ratings().gameOver(playerX, nameX, playerO, nameO, winner);
+        String text = loser.getPlayerName() + " ran out of time. " + nameOf(winner) + " wins!";
+        playerX.sendGameOver(winner, text);
+        playerO.sendGameOver(winner, text);
+        flushBoth();
+        if (spectators != null) {
+            spectators.gameOver(winner, text);
+        }
+    }
+
+    private void onSuggest(PlayerHandler player, IntConsumer onCell) {
+        char mark = player.getMark();
+        if (gameEnded || closed || currentTurn != mark || !isSeated(player)) {
+            return;
+        }
+        if (board instanceof CompactBoard compact) {
+            onCell.accept(PerfectPlay.bestMove(compact.bits()));
+            return;
+        }
+        // The solver copies the board before returning, so the search never
+        // sees later moves
+        registry.solver(board.size(), board.winLength()).analyzeAsync(board, mark, registry.getThinkMillis())
+                .thenAccept(result -> {
+                    if (result.cell >= 0) {
+                        onCell.accept(result.cell);
+                    }
+                })
+                .exceptionally(e -> {
+                    System.err.println("Analysis failed in match " + matchId + ": " + e);
+                    return null;
+                });
+    }
+
+    // Gives mark's seat to an AbsentPlayer until its player resumes or the
+    // grace period runs out
+    private void holdSeat(char mark) {
+        TimerWheel.Timeout expiry = registry.schedule(() -> submit(() -> onExpire(mark)), registry.getGraceMillis());
+        if (mark == 'X') {
+            playerX = new AbsentPlayer();
+            cancel(expiryX);
+            expiryX = expiry;
+        } else {
+            playerO = new AbsentPlayer();
+            cancel(expiryO);
+            expiryO = expiry;
+        }
+    }
+
+    private static void cancel(TimerWheel.Timeout timeout) {
+        if (timeout != null) {
+            timeout.cancel();
+        }
+    }
+
+    private void onResume(PlayerHandler player, char mark) {
+        if (closed) {
+            player.resumeFailed();
+            return;
+        }
+        PlayerHandler previous = mark == 'X' ? playerX : playerO;
+        if (mark == 'X') {
+            playerX = player;
+            nameX = player.getPlayerName();
+            cancel(expiryX);
+            expiryX = null;
+        } else {
+            playerO = player;
+            nameO = player.getPlayerName();
+            cancel(expiryO);
+            expiryO = null;
+        }
+        player.joinMatch(this, mark);
+        ServerMetrics.seatsResumed.increment();
+
+        // Everything the client needs to redraw the match, in one write
+        player.sendBoard(board.size(), board.winLength());
+        player.sendAssignment();
+        player.sendToken(tokenFor(mark));
+        player.sendState(board, gameEnded ? '-' : currentTurn);
+        if (gameEnded) {
+            player.sendGameOver(lastResult, resultText());
+        } else {
+            player.sendTurn(currentTurn == mark);
+        }
+        opponentOf(player).sendChat("System: " + player.getPlayerName() + " reconnected.");
+        flushBoth();
+        if (!gameEnded && currentTurn == mark) {
+            startTurnClock();
+        }
+
+        // The old connection, if it is somehow still open, no longer has a
+        // seat; closing it is a no-op for this match
+        if (!(previous instanceof AbsentPlayer)) {
+            previous.connectionClosed();
+        }
+    }
+
+    private void onExpire(char mark) {
+        PlayerHandler seat = mark == 'X' ? playerX : playerO;
+        if (!(seat instanceof AbsentPlayer)) {
+            return;
+        }
+        if (!gameEnded && !closed && !(opponentOf(seat) instanceof AbsentPlayer)) {
+            // Not back in time: a game in progress is lost, not just abandoned
+            char winner = mark == 'X' ? 'O' : 'X';
+            gameEnded = true;
+            lastResult = winner;
+            ServerMetrics.gamesCompleted.increment();
+            registry.journal().result(matchId, winner, movesPlayed);
+            registry.ratings().gameOver(playerX, nameX, playerO, nameO, winner);
+            String text = nameOf(mark) + " did not come back. " + nameOf(winner) + " wins!";
+            PlayerHandler opponent = opponentOf(seat);
+            opponent.sendGameOver(winner, text);
+            opponent.flush();
+            if (spectators != null) {
+                spectators.gameOver(winner, text);
+            }
+        }
+        onDisconnect(seat);
+    }
+
+    private void onDisconnect(PlayerHandler player) {
+        if (closed || !isSeated(player)) {
+            return;
+        }
+        long grace = registry.getGraceMillis();
+        if (grace > 0 && !(player instanceof AbsentPlayer)) {
+            // Most drops are brief; keep the match for the player to resume
+            PlayerHandler opponent = opponentOf(player); // Before the seat is swapped
+            holdSeat(player == playerX ? 'X' : 'O');
+            ServerMetrics.seatsHeld.increment();
+            opponent.sendChat("System: " + player.getPlayerName() + " lost connection. Holding their seat for "
+                    + TimeUnit.MILLISECONDS.toSeconds(grace) + " seconds...");
+            opponent.flush();
+            return;
+        }
+        closed = true;
+        cancel(expiryX);
+        cancel(expiryO);
+        cancel(turnClock);
+        if (spectators != null) {
+            spectators.close("Match ended");
+        }
+        registry.remove(this);
+
+        if (!gameEnded) {
+            gameEnded = true;
+            registry.journal().result(matchId, '-', movesPlayed);
+            PlayerHandler opponent = opponentOf(player);
+            opponent.sendGameOver('-', "Opponent disconnected");
+            opponent.flush();
+        }
+        registry.journal().close(matchId);
+    }
+}
\ No newline at end of file
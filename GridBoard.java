@@ -0,0 +1,93 @@
+import java.util.Arrays;
+
+// N x N board with K-in-a-row wins (e.g. 15x15 gomoku). Wins are found by
+// walking outward from the last move only, so each move costs O(K).
+public class GridBoard implements Board {
+    private static final byte EMPTY = 0;
+    private static final byte X = 1;
+    private static final byte O = 2;
+
+    // Row/column steps for horizontal, vertical and both diagonals
+    private static final int[] DIRECTION_ROW = {0, 1, 1, 1};
+    private static final int[] DIRECTION_COL = {1, 0, 1, -1};
+
+    private final int size;
+    private final int winLength;
+    private final byte[] cells;
+    private int filled = 0;
+
+    public GridBoard(int size, int winLength) {
+        if (size < 1 || winLength < 1 || winLength > size) {
+            throw new IllegalArgumentException("Invalid board " + size + "x" + size + " with win length " + winLength);
+        }
+        this.size = size;
+        this.winLength = winLength;
+        this.cells = new byte[size * size];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int winLength() {
+        return winLength;
+    }
+
+    @Override
+    public boolean inBounds(int row, int col) {
+        return row >= 0 && row < size && col >= 0 && col < size;
+    }
+
+    @Override
+    public boolean isEmpty(int row, int col) {
+        return cells[row * size + col] == EMPTY;
+    }
+
+    @Override
+    public char get(int row, int col) {
+        byte cell = cells[row * size + col];
+        return cell == X ? 'X' : cell == O ? 'O' : ' ';
+    }
+
+    @Override
+    public char place(int row, int col, char mark) {
+        byte value = mark == 'X' ? X : O;
+        cells[row * size + col] = value;
+        filled++;
+
+        for (int d = 0; d < 4; d++) {
+            int count = 1
+                    + countFrom(row, col, DIRECTION_ROW[d], DIRECTION_COL[d], value)
+                    + countFrom(row, col, -DIRECTION_ROW[d], -DIRECTION_COL[d], value);
+            if (count >= winLength) {
+                return mark; // Win
+            }
+        }
+
+        if (filled == cells.length) {
+            return 'D'; // Draw
+        }
+        return ' '; // Game continues
+    }
+
+    // Consecutive cells holding value, stepping away from (row, col); stops after winLength - 1
+    private int countFrom(int row, int col, int dRow, int dCol, byte value) {
+        int count = 0;
+        int r = row + dRow;
+        int c = col + dCol;
+        while (count < winLength - 1 && r >= 0 && r < size && c >= 0 && c < size && cells[r * size + c] == value) {
+            count++;
+            r += dRow;
+            c += dCol;
+        }
+        return count;
+    }
+
+    @Override
+    public void reset() {
+        Arrays.fill(cells, EMPTY);
+        filled = 0;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,183 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+// Reads a GameJournal directory without loading it into memory. Only the
+// games still open at the current point of the log are held.
+//
+//   java JournalReplay journal                 aggregate statistics
+//   java JournalReplay journal --match=42      every game of one match
+public class JournalReplay {
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: java JournalReplay <journal dir> [--match=ID]");
+            System.exit(1);
+        }
+        Path directory = Path.of(args[0]);
+        long matchId = -1;
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].startsWith("--match=")) {
+                matchId = Long.parseLong(args[i].substring("--match=".length()));
+            }
+        }
+        if (matchId >= 0) {
+            replayMatch(directory, matchId);
+        } else {
+            printStats(directory);
+        }
+    }
+
+    // Rebuilds each game of the match and prints the board after it ends
+    private static void replayMatch(Path directory, long wanted) throws IOException {
+        Board[] board = {null};
+        int[] game = {0};
+        GameJournal.replay(directory, (type, mark, cell, aux, matchId, time) -> {
+            if (matchId != wanted) {
+                return;
+            }
+            switch (type) {
+                case GameJournal.START:
+                    board[0] = Board.create(cell, aux);
+                    game[0]++;
+                    System.out.println("Game " + game[0] + " (" + cell + "x" + cell + ", " + aux + " in a row)");
+                    break;
+                case GameJournal.MOVE:
+                    if (board[0] != null) {
+                        int size = board[0].size();
+                        board[0].place(cell / size, cell % size, mark);
+                        System.out.println("  " + aux + ". " + mark + " " + (cell / size) + "," + (cell % size));
+                    }
+                    break;
+                case GameJournal.RESULT:
+                    System.out.println("  " + describe(mark) + " after " + aux + " moves");
+                    if (board[0] != null) {
+                        printBoard(board[0]);
+                    }
+                    break;
+                case GameJournal.CLOSE:
+                    System.out.println("Match closed");
+                    break;
+                default:
+                    break;
+            }
+        });
+        if (game[0] == 0) {
+            System.out.println("No games recorded for match " + wanted);
+        }
+    }
+
+    private static String describe(char result) {
+        switch (result) {
+            case 'D':
+                return "Draw";
+            case '-':
+                return "Abandoned";
+            default:
+                return result + " wins";
+        }
+    }
+
+    private static void printBoard(Board board) {
+        for (int row = 0; row < board.size(); row++) {
+            StringBuilder line = new StringBuilder("    ");
+            for (int col = 0; col < board.size(); col++) {
+                char mark = board.get(row, col);
+                line.append(mark == ' ' ? '.' : mark);
+            }
+            System.out.println(line);
+        }
+    }
+
+    // Per-game state while it is still open in the log
+    private static final class OpenGame {
+        int firstMove = -1;
+        int boardSize;
+    }
+
+    private static void printStats(Path directory) throws IOException {
+        Map<Long, OpenGame> open = new HashMap<>();
+        // Outcome counts by first move cell: [X wins, O wins, draws, abandoned]
+        Map<Integer, long[]> byFirstMove = new HashMap<>();
+        long[] lengths = new long[1024];
+        long[] totals = new long[4];
+        long[] records = {0};
+        int[] maxOpen = {0};
+
+        GameJournal.replay(directory, (type, mark, cell, aux, matchId, time) -> {
+            records[0]++;
+            switch (type) {
+                case GameJournal.START: {
+                    OpenGame game = new OpenGame();
+                    game.boardSize = cell;
+                    open.put(matchId, game);
+                    maxOpen[0] = Math.max(maxOpen[0], open.size());
+                    break;
+                }
+                case GameJournal.MOVE: {
+                    OpenGame game = open.get(matchId);
+                    if (game != null && aux == 1) {
+                        game.firstMove = cell;
+                    }
+                    break;
+                }
+                case GameJournal.RESULT: {
+                    OpenGame game = open.remove(matchId);
+                    int outcome = mark == 'X' ? 0 : mark == 'O' ? 1 : mark == 'D' ? 2 : 3;
+                    totals[outcome]++;
+                    if (outcome < 3) {
+                        lengths[Math.min(aux, lengths.length - 1)]++;
+                    }
+                    if (game != null && game.firstMove >= 0) {
+                        int key = game.boardSize << 16 | game.firstMove;
+                        byFirstMove.computeIfAbsent(key, k -> new long[4])[outcome]++;
+                    }
+                    break;
+                }
+                case GameJournal.CLOSE:
+                    open.remove(matchId);
+                    break;
+                default:
+                    break;
+            }
+        });
+
+        long finished = totals[0] + totals[1] + totals[2];
+        System.out.println("Records:    " + records[0]);
+        System.out.println("Games:      " + (finished + totals[3]) + " (" + totals[3] + " abandoned)");
+        if (finished == 0) {
+            return;
+        }
+        System.out.printf("X wins:     %.1f%%%n", 100.0 * totals[0] / finished);
+        System.out.printf("O wins:     %.1f%%%n", 100.0 * totals[1] / finished);
+        System.out.printf("Draws:      %.1f%%%n", 100.0 * totals[2] / finished);
+
+        long moves = 0;
+        for (int i = 0; i < lengths.length; i++) {
+            moves += i * lengths[i];
+        }
+        System.out.printf("Game length: average %.1f moves%n", (double) moves / finished);
+        for (int i = 0; i < lengths.length; i++) {
+            if (lengths[i] > 0) {
+                System.out.printf("  %3d moves: %d%n", i, lengths[i]);
+            }
+        }
+
+        System.out.println("By first move (X win / O win / draw):");
+        byFirstMove.entrySet().stream()
+                .sorted(Map.Entry.comparingByKey())
+                .forEach(entry -> {
+                    int size = entry.getKey() >>> 16;
+                    int cell = entry.getKey() & 0xFFFF;
+                    long[] counts = entry.getValue();
+                    long games = counts[0] + counts[1] + counts[2];
+                    if (games == 0) {
+                        return;
+                    }
+                    System.out.printf("  %d,%d: %.1f%% / %.1f%% / %.1f%%  (%d games)%n",
+                            cell / size, cell % size,
+                            100.0 * counts[0] / games, 100.0 * counts[1] / games, 100.0 * counts[2] / games, games);
+                });
+        System.out.println("Largest number of games open at once: " + maxOpen[0]);
+    }
+}
\ No newline at end of file
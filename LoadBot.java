@@ -0,0 +1,292 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// Headless load generator. Opens N GameClient connections, each driven by
+// its own virtual thread, and plays full games against whoever the lobby
+// pairs it with (normally another bot). Prints moves/sec once a second and
+// a summary with move latency percentiles at the end. --watchers=N adds N
+// spectator connections on the first match, to show what an audience costs
+// the players.
+//
+//   java LoadBot localhost 12345 --clients=2000 --duration=30 --binary
+public class LoadBot {
+    private static String host = "localhost";
+    private static int port = 12345;
+    private static int clients = 100;
+    private static int durationSeconds = 30;
+    private static int thinkMillis = 0;
+    private static int chatPercent = 5;
+    private static boolean binary = false;
+    private static boolean scripted = false;
+    private static int watchers = 0;
+
+    private static final LongAdder moves = new LongAdder();
+    private static final LongAdder games = new LongAdder();
+    private static final LongAdder chats = new LongAdder();
+    private static final LongAdder connectFailures = new LongAdder();
+    private static final LongAdder dropped = new LongAdder();
+    private static final LongAdder watcherMessages = new LongAdder();
+    private static volatile boolean running = true;
+
+    public static void main(String[] args) throws InterruptedException {
+        List<String> positional = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.startsWith("--clients=")) {
+                clients = intOption(arg, "--clients=", clients);
+            } else if (arg.startsWith("--duration=")) {
+                durationSeconds = intOption(arg, "--duration=", durationSeconds);
+            } else if (arg.startsWith("--think=")) {
+                thinkMillis = intOption(arg, "--think=", thinkMillis);
+            } else if (arg.startsWith("--chat=")) {
+                chatPercent = intOption(arg, "--chat=", chatPercent);
+            } else if (arg.equals("--binary")) {
+                binary = true;
+            } else if (arg.startsWith("--watchers=")) {
+                watchers = intOption(arg, "--watchers=", watchers);
+            } else if (arg.equals("--scripted")) {
+                scripted = true;
+            } else {
+                positional.add(arg);
+            }
+        }
+        if (positional.size() >= 1) {
+            host = positional.get(0);
+        }
+        if (positional.size() >= 2) {
+            try {
+                port = Integer.parseInt(positional.get(1));
+            } catch (NumberFormatException e) {
+                System.err.println("Invalid port number. Using default: 12345");
+            }
+        }
+
+        System.out.println("Starting " + clients + " bots against " + host + ":" + port
+                + (binary ? " (binary)" : " (text)") + " for " + durationSeconds + "s");
+
+        Bot[] bots = new Bot[clients];
+        ExecutorService botThreads = Executors.newVirtualThreadPerTaskExecutor();
+        long startedAt = System.nanoTime();
+        for (int i = 0; i < clients; i++) {
+            Bot bot = new Bot("bot-" + i);
+            bots[i] = bot;
+            botThreads.execute(bot);
+        }
+
+        long lastMoves = 0;
+        long lastWatched = 0;
+        List<GameClient> audience = new ArrayList<>();
+        for (int second = 1; second <= durationSeconds; second++) {
+            Thread.sleep(1000);
+            if (second == 1 && watchers > 0) {
+                // Match 1 exists by now
+                for (int i = 0; i < watchers; i++) {
+                    GameClient watcher = new GameClient(host, port, binary, true);
+                    if (!watcher.isConnected()) {
+                        connectFailures.increment();
+                        continue;
+                    }
+                    audience.add(watcher);
+                    botThreads.execute(() -> watch(watcher));
+                }
+            }
+            long total = moves.sum();
+            long watched = watcherMessages.sum();
+            System.out.println(second + "s: " + (total - lastMoves) + " moves/s, "
+                    + games.sum() + " games, " + connectFailures.sum() + " connect failures, "
+                    + dropped.sum() + " dropped"
+                    + (watchers > 0 ? ", " + (watched - lastWatched) + " spectator messages/s" : ""));
+            lastMoves = total;
+            lastWatched = watched;
+        }
+
+        running = false;
+        double elapsed = (System.nanoTime() - startedAt) / 1e9;
+        for (Bot bot : bots) {
+            bot.stop();
+        }
+        for (GameClient watcher : audience) {
+            watcher.disconnect();
+        }
+        botThreads.shutdown();
+        // Bots stop once their socket closes; waiting also makes their
+        // latency arrays safe to read here
+        botThreads.awaitTermination(10, TimeUnit.SECONDS);
+        printSummary(bots, elapsed);
+    }
+
+    private static void watch(GameClient watcher) {
+        watcher.watch(1);
+        try {
+            while (watcher.readMessage() != null) {
+                watcherMessages.increment();
+            }
+        } catch (IOException e) {
+            // Disconnected at the end of the run
+        }
+    }
+
+    private static int intOption(String arg, String option, int defaultValue) {
+        try {
+            return Integer.parseInt(arg.substring(option.length()));
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid option " + arg + ". Using default: " + defaultValue);
+            return defaultValue;
+        }
+    }
+
+    private static void printSummary(Bot[] bots, double elapsed) {
+        // Each bot only records its own moves, so merging after the run
+        // keeps the hot path free of shared state beyond a few counters
+        int count = 0;
+        for (Bot bot : bots) {
+            count += bot.latencyCount;
+        }
+        long[] all = new long[count];
+        int position = 0;
+        for (Bot bot : bots) {
+            System.arraycopy(bot.latencies, 0, all, position, bot.latencyCount);
+            position += bot.latencyCount;
+        }
+        Arrays.sort(all);
+
+        System.out.println("---");
+        System.out.printf("Moves:              %d (%.0f/s)%n", moves.sum(), moves.sum() / elapsed);
+        System.out.println("Games finished:     " + games.sum());
+        System.out.println("Chat messages:      " + chats.sum());
+        System.out.println("Connect failures:   " + connectFailures.sum());
+        System.out.println("Dropped by server:  " + dropped.sum());
+        if (count > 0) {
+            System.out.printf("Move latency (ms):  p50 %.2f  p90 %.2f  p99 %.2f  p99.9 %.2f  max %.2f%n",
+                    percentile(all, 50), percentile(all, 90), percentile(all, 99),
+                    percentile(all, 99.9), all[count - 1] / 1e6);
+        }
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        int index = (int) Math.ceil(p / 100 * sorted.length) - 1;
+        return sorted[Math.max(0, index)] / 1e6;
+    }
+
+    // One simulated player. Latency is measured from sending a move until
+    // the server's broadcast of that same move comes back.
+    private static final class Bot implements Runnable {
+        private final String name;
+        private volatile GameClient client;
+        private Board board = Board.create(3, 3);
+        private char mark = ' ';
+        private long moveSentAt = 0;
+        private long[] latencies = new long[64];
+        private int latencyCount = 0;
+
+        Bot(String name) {
+            this.name = name;
+        }
+
+        void stop() {
+            GameClient current = client;
+            if (current != null) {
+                current.disconnect();
+            }
+        }
+
+        @Override
+        public void run() {
+            client = new GameClient(host, port, binary, true);
+            if (!client.isConnected()) {
+                connectFailures.increment();
+                return;
+            }
+            client.setPlayerName(name);
+            try {
+                String message;
+                while (running && (message = client.readMessage()) != null) {
+                    handle(message);
+                }
+            } catch (IOException e) {
+                // Falls through to the check below
+            }
+            if (running) {
+                dropped.increment();
+            }
+            client.disconnect();
+        }
+
+        private void handle(String message) {
+            if (message.startsWith("BOARD ")) {
+                String[] parts = message.split(" ");
+                board = Board.create(Integer.parseInt(parts[1]), Integer.parseInt(parts[2]));
+            } else if (message.startsWith("You are ")) {
+                mark = message.charAt(8);
+            } else if (message.equals("Your turn")) {
+                playMove();
+            } else if (message.startsWith("Move ")) {
+                char moveMark = message.charAt(5);
+                int comma = message.indexOf(',');
+                int row = Integer.parseInt(message.substring(7, comma));
+                int col = Integer.parseInt(message.substring(comma + 1));
+                board.place(row, col, moveMark);
+                if (moveMark == mark && moveSentAt != 0) {
+                    recordLatency(System.nanoTime() - moveSentAt);
+                    moveSentAt = 0;
+                    moves.increment();
+                }
+            } else if (message.startsWith("GAME_OVER")) {
+                if (message.endsWith("Opponent disconnected")) {
+                    client.disconnect(); // Session is gone; nothing more to play
+                    return;
+                }
+                if (mark == 'X') {
+                    games.increment(); // Counted once per match
+                }
+                client.requestRestart();
+            } else if (message.equals("RESET_GAME")) {
+                board.reset();
+            }
+        }
+
+        private void playMove() {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            if (chatPercent > 0 && random.nextInt(100) < chatPercent) {
+                client.sendChat(name + " says hi");
+                chats.increment();
+            }
+            if (thinkMillis > 0) {
+                try {
+                    Thread.sleep(thinkMillis);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+
+            int size = board.size();
+            int cells = size * size;
+            // Scripted bots take the first free cell so runs are repeatable;
+            // random bots start the scan at a random cell
+            int start = scripted ? 0 : random.nextInt(cells);
+            for (int i = 0; i < cells; i++) {
+                int cell = (start + i) % cells;
+                int row = cell / size;
+                int col = cell % size;
+                if (board.isEmpty(row, col)) {
+                    moveSentAt = System.nanoTime();
+                    client.sendMove(row, col);
+                    return;
+                }
+            }
+        }
+
+        private void recordLatency(long nanos) {
+            if (latencyCount == latencies.length) {
+                latencies = Arrays.copyOf(latencies, latencyCount * 2);
+            }
+            latencies[latencyCount++] = nanos;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,177 @@
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Matchmaking: players join once their NAME has arrived and a dedicated
+// matcher thread pairs them, so the accept loop never waits on a client.
+// With a bot delay set, a player left waiting that long plays a BotPlayer.
+//
+// A GameRouter in front of a cluster watches each node's lobby: it sends
+// LOBBY and is sent "LOBBY <waiting> <players>" whenever either changes,
+// so it can send the next new player to wherever someone is waiting.
+public class Lobby {
+    private final LinkedBlockingQueue<PlayerHandler> queue = new LinkedBlockingQueue<>();
+    private final AtomicInteger unpaired = new AtomicInteger(); // Queued or held by the matcher
+    private final CopyOnWriteArrayList<PlayerHandler> watchers = new CopyOnWriteArrayList<>();
+    private final MatchRegistry registry;
+    private final ChatService chat;
+    private final long botDelayMillis; // 0 means never
+    private final Thread matcher;
+
+    public Lobby(MatchRegistry registry) {
+        this(registry, 0);
+    }
+
+    public Lobby(MatchRegistry registry, long botDelayMillis) {
+        this.registry = registry;
+        this.botDelayMillis = botDelayMillis;
+        this.chat = new ChatService(registry);
+        this.matcher = new Thread(this::matchPlayers, "matchmaker");
+        this.matcher.setDaemon(true);
+    }
+
+    public void start() {
+        matcher.start();
+    }
+
+    public ChatService chat() {
+        return chat;
+    }
+
+    public Ratings ratings() {
+        return registry.ratings();
+    }
+
+    // Connections share the matches' timer wheel for their idle checks
+    public TimerWheel.Timeout schedule(Runnable task, long delayMillis) {
+        return registry.schedule(task, delayMillis);
+    }
+
+    public long getIdleMillis() {
+        return registry.getIdleMillis();
+    }
+
+    public void join(PlayerHandler player) {
+        unpaired.incrementAndGet();
+        queue.add(player);
+        changed();
+    }
+
+    public void addWatcher(PlayerHandler watcher) {
+        watchers.add(watcher);
+        changed();
+    }
+
+    public void removeWatcher(PlayerHandler watcher) {
+        watchers.remove(watcher);
+    }
+
+    // Sends the watchers the current figures. Called when a player joins or
+    // leaves the lobby and when any connection closes.
+    public void changed() {
+        if (watchers.isEmpty()) {
+            return;
+        }
+        // Read and sent under one lock so a watcher never gets an older
+        // snapshot after a newer one
+        synchronized (watchers) {
+            int waiting = unpaired.get();
+            // The watchers' own connections are not players
+            int players = (int) (ServerMetrics.connectionsOpened.sum() - ServerMetrics.connectionsClosed.sum())
+                    - watchers.size();
+            for (PlayerHandler watcher : watchers) {
+                watcher.sendLobby(waiting, Math.max(0, players));
+            }
+        }
+    }
+
+    // Matcher thread: count players as they leave the lobby
+    private void left(int players) {
+        unpaired.addAndGet(-players);
+        changed();
+    }
+
+    // Hands player back the seat its token belongs to. False if the token
+    // is malformed or names no seat in an active match.
+    public boolean resume(PlayerHandler player, String token) {
+        int dash = token.indexOf('-');
+        if (dash <= 0) {
+            return false;
+        }
+        GameSession session;
+        char mark;
+        try {
+            session = registry.get(Long.parseLong(token.substring(0, dash)));
+            if (session == null) {
+                return false;
+            }
+            mark = session.seatForToken(Long.parseUnsignedLong(token.substring(dash + 1), 16));
+        } catch (NumberFormatException e) {
+            return false;
+        }
+        if (mark == ' ') {
+            return false;
+        }
+        session.resume(player, mark);
+        return true;
+    }
+
+    // Adds watcher to the spectators of a match. False if there is no such match.
+    public boolean watch(PlayerHandler watcher, long matchId) {
+        GameSession session = registry.get(matchId);
+        if (session == null) {
+            return false;
+        }
+        session.watch(watcher);
+        return true;
+    }
+
+    public int waitingPlayers() {
+        return queue.size();
+    }
+
+    private void matchPlayers() {
+        PlayerHandler waiting = null;
+        long waitingSince = 0;
+        try {
+            while (true) {
+                PlayerHandler player;
+                if (waiting == null || botDelayMillis == 0) {
+                    player = queue.take();
+                } else {
+                    long remaining = botDelayMillis - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - waitingSince);
+                    player = queue.poll(Math.max(0, remaining), TimeUnit.MILLISECONDS);
+                    if (player == null) {
+                        // Nobody else turned up in time
+                        if (!waiting.isClosed()) {
+                            registry.createMatch(waiting, new BotPlayer()).start();
+                        }
+                        waiting = null;
+                        left(1);
+                        continue;
+                    }
+                }
+                if (player.isClosed()) {
+                    left(1);
+                    continue; // Left before being matched
+                }
+                if (waiting == null || waiting.isClosed()) {
+                    if (waiting != null) {
+                        left(1);
+                    }
+                    waiting = player;
+                    waitingSince = System.nanoTime();
+                    continue;
+                }
+
+                // The player who has waited longest plays X
+                registry.createMatch(waiting, player).start();
+                waiting = null;
+                left(2);
+            }
+        } catch (InterruptedException e) {
+            System.out.println("Matchmaker interrupted");
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,190 @@
+import java.security.SecureRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class MatchRegistry {
+    // Active matches keyed by match id. Each session guards its own state,
+    // so the map is the only structure shared between matches.
+    private final ConcurrentHashMap<Long, GameSession> sessions;
+    private final AtomicLong nextMatchId = new AtomicLong(1);
+    // In a cluster, node nodeIndex of nodeCount only hands out the match ids
+    // nodeForMatch() maps to it, so a router can find any match's node
+    private volatile int nodeIndex = 0;
+    private volatile int nodeCount = 1;
+    private final int boardSize;
+    private final int winLength;
+    private volatile long thinkMillis = 500; // Search budget for bot moves and hints
+    // Keyed by size << 16 | winLength, since a recovered match keeps the
+    // board it was journaled with. Created on first use; most servers never need one.
+    private final ConcurrentHashMap<Integer, Solver> solvers = new ConcurrentHashMap<>();
+    private volatile GameJournal journal = GameJournal.disabled();
+    private volatile Ratings ratings = Ratings.disabled();
+    private volatile long graceMillis = 30_000; // How long a dropped player's seat is held; 0 ends the match at once
+    private volatile long idleMillis = 60_000; // Silence after which a connection is closed; 0 never
+    private volatile long turnMillis = 0; // Time to move before forfeiting the game; 0 is unlimited
+    private final SecureRandom tokens = new SecureRandom();
+    // Grace periods, turn clocks, idle checks and chat windows: 10 ms ticks,
+    // 512 slots, so one turn of the wheel covers about 5 seconds
+    private final TimerWheel timers = new TimerWheel("match-timers", 10, 512);
+    private final ExecutorService fanOut; // Runs SpectatorFeed deliveries, never a session's events
+
+    public MatchRegistry() {
+        this(3, 3);
+    }
+
+    public MatchRegistry(int boardSize, int winLength) {
+        this(boardSize, winLength, 1024);
+    }
+
+    public MatchRegistry(int boardSize, int winLength, int expectedMatches) {
+        // Fail at startup rather than on the first match
+        Board.create(boardSize, winLength);
+        if (boardSize * boardSize > BinaryProtocol.MAX_PAYLOAD) {
+            // A resuming player gets the whole board in one STATE frame
+            throw new IllegalArgumentException("Board " + boardSize + "x" + boardSize
+                    + " is too large; the most is " + (int) Math.sqrt(BinaryProtocol.MAX_PAYLOAD) + " per side");
+        }
+        this.boardSize = boardSize;
+        this.winLength = winLength;
+        this.sessions = new ConcurrentHashMap<>(expectedMatches);
+        this.fanOut = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), runnable -> {
+            Thread thread = new Thread(runnable, "spectator-fanout");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public GameSession createMatch(PlayerHandler playerX, PlayerHandler playerO) {
+        long matchId = nextMatchId.getAndAdd(nodeCount);
+        Board board = Board.create(boardSize, winLength);
+        GameSession session = new GameSession(matchId, playerX, playerO, board, this,
+                tokens.nextLong(), tokens.nextLong());
+        sessions.put(matchId, session);
+        ServerMetrics.matchesStarted.increment();
+        playerX.joinMatch(session, 'X');
+        playerO.joinMatch(session, 'O');
+        return session;
+    }
+
+    // Re-creates every match the journal recovered, with both seats held.
+    // Players take their seats back with their tokens; a match whose seats
+    // are not both filled within the grace period ends as abandoned.
+    public int recover(GameJournal journal) {
+        nextMatchId.set(firstOwnedId(Math.max(nextMatchId.get(), journal.maxMatchId() + 1)));
+        int restored = 0;
+        for (GameJournal.MatchState state : journal.recoveredMatches()) {
+            if (state.cells == null) {
+                continue; // Tokens written, but the START record never made it
+            }
+            GameSession session = new GameSession(state.matchId, new AbsentPlayer(), new AbsentPlayer(),
+                    Board.create(state.boardSize, state.winLength), this, state.tokenX, state.tokenO);
+            session.restore(state);
+            sessions.put(state.matchId, session);
+            restored++;
+        }
+        return restored;
+    }
+
+    // Makes this registry node index of count (0-based) in a cluster
+    public void setNode(int index, int count) {
+        if (count < 1 || index < 0 || index >= count) {
+            throw new IllegalArgumentException("Node must be K/N with 0 <= K < N, got " + index + "/" + count);
+        }
+        this.nodeIndex = index;
+        this.nodeCount = count;
+        nextMatchId.set(firstOwnedId(nextMatchId.get()));
+    }
+
+    // Node that owns matchId in a cluster of nodeCount nodes
+    public static int nodeForMatch(long matchId, int nodeCount) {
+        return (int) Math.floorMod(matchId - 1, (long) nodeCount);
+    }
+
+    // Smallest id >= from that this node owns
+    private long firstOwnedId(long from) {
+        return from + Math.floorMod(nodeIndex - nodeForMatch(from, nodeCount), nodeCount);
+    }
+
+    // Runs task on the timer thread after delayMillis; sessions submit
+    // from there into their own mailbox
+    public TimerWheel.Timeout schedule(Runnable task, long delayMillis) {
+        return timers.schedule(task, delayMillis);
+    }
+
+    public long pendingTimers() {
+        return timers.pending();
+    }
+
+    public ExecutorService fanOut() {
+        return fanOut;
+    }
+
+    public long getGraceMillis() {
+        return graceMillis;
+    }
+
+    public void setGraceMillis(long graceMillis) {
+        this.graceMillis = graceMillis;
+    }
+
+    public long getIdleMillis() {
+        return idleMillis;
+    }
+
+    public void setIdleMillis(long idleMillis) {
+        this.idleMillis = idleMillis;
+    }
+
+    public long getTurnMillis() {
+        return turnMillis;
+    }
+
+    public void setTurnMillis(long turnMillis) {
+        this.turnMillis = turnMillis;
+    }
+
+    // Solver for boards of this size and win length
+    public Solver solver(int size, int winLength) {
+        return solvers.computeIfAbsent(size << 16 | winLength, key -> new Solver(size, winLength));
+    }
+
+    public GameJournal journal() {
+        return journal;
+    }
+
+    public void setJournal(GameJournal journal) {
+        this.journal = journal;
+    }
+
+    public Ratings ratings() {
+        return ratings;
+    }
+
+    public void setRatings(Ratings ratings) {
+        this.ratings = ratings;
+    }
+
+    public long getThinkMillis() {
+        return thinkMillis;
+    }
+
+    public void setThinkMillis(long thinkMillis) {
+        this.thinkMillis = thinkMillis;
+    }
+
+    public GameSession get(long matchId) {
+        return sessions.get(matchId);
+    }
+
+    public void remove(GameSession session) {
+        if (sessions.remove(session.getMatchId(), session)) {
+            ServerMetrics.matchesFinished.increment();
+        }
+    }
+
+    public int activeMatches() {
+        return sessions.size();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,224 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+
+// Non-blocking connection driven by a NioServer event loop
+public class NioConnection implements PlayerConnection {
+    private static final int READ_BUFFER_SIZE = 512 + BinaryProtocol.MAX_PAYLOAD;
+    private static final int INITIAL_WRITE_BUFFER_SIZE = 256;
+
+    // Protocol state, decided by the first byte the client sends
+    private static final int UNKNOWN = 0;
+    private static final int TEXT = 1;
+    private static final int BINARY = 2;
+
+    private final SocketChannel channel;
+    private final NioServer.EventLoop loop;
+    // Both buffers are reused for the lifetime of the connection
+    private final ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+    private final OutputBuffer output = new OutputBuffer(INITIAL_WRITE_BUFFER_SIZE);
+    private ByteBuffer writeView; // Wraps output's array for channel writes
+    private SelectionKey key;
+    private PlayerHandler handler;
+    private int protocol = UNKNOWN;
+    private boolean flushRequested = false;
+    private boolean overflowed = false;
+    private volatile boolean closed = false;
+
+    public NioConnection(SocketChannel channel, NioServer.EventLoop loop) {
+        this.channel = channel;
+        this.loop = loop;
+    }
+
+    void setHandler(PlayerHandler handler) {
+        this.handler = handler;
+    }
+
+    void register(Selector selector) throws IOException {
+        synchronized (output) {
+            key = channel.register(selector, SelectionKey.OP_READ, this);
+        }
+    }
+
+    @Override
+    public OutputBuffer output() {
+        return output;
+    }
+
+    @Override
+    public void flush() {
+        flush(false);
+    }
+
+    @Override
+    public void flushBulk() {
+        flush(true);
+    }
+
+    private void flush(boolean bulk) {
+        if (closed) {
+            return;
+        }
+        boolean schedule;
+        synchronized (output) {
+            ServerMetrics.outboundQueueBytes.record(output.size());
+            if (output.size() > SocketConnection.MAX_PENDING_BYTES) {
+                // Not reading; the event loop closes it on its next pass
+                overflowed = true;
+                output.clear();
+            }
+            schedule = !flushRequested && (overflowed || output.size() > 0);
+            flushRequested |= schedule;
+        }
+        if (schedule) {
+            loop.requestFlush(this, bulk);
+        }
+    }
+
+    // Runs on the event loop thread
+    void onReadable() {
+        int n;
+        try {
+            n = channel.read(readBuffer);
+        } catch (IOException e) {
+            System.out.println("Connection lost for " + handler.getPlayerName());
+            handler.connectionClosed();
+            return;
+        }
+        if (n < 0) {
+            handler.connectionClosed();
+            return;
+        }
+
+        byte[] data = readBuffer.array();
+        int limit = readBuffer.position();
+        int start = 0;
+        if (protocol == UNKNOWN && limit > 0) {
+            if ((data[0] & 0xFF) == BinaryProtocol.MAGIC) {
+                protocol = BINARY;
+                handler.setBinary(true);
+                start = 1;
+            } else {
+                protocol = TEXT;
+            }
+        }
+
+        start = protocol == BINARY ? readFrames(data, start, limit) : readLines(data, start, limit);
+        if (start < 0) {
+            handler.connectionClosed();
+            return;
+        }
+
+        // Keep any partial message for the next read
+        if (start > 0) {
+            System.arraycopy(data, start, data, 0, limit - start);
+            readBuffer.position(limit - start);
+        } else if (limit == data.length) {
+            // A single message longer than the buffer is not valid
+            System.out.println("Message too long from " + handler.getPlayerName());
+            handler.connectionClosed();
+        }
+    }
+
+    // Returns the offset of the first unconsumed byte, or -1 once a line
+    // has closed the connection; nothing after that is dispatched
+    private int readLines(byte[] data, int start, int limit) {
+        for (int i = start; i < limit; i++) {
+            if (data[i] == '\n') {
+                int end = (i > start && data[i - 1] == '\r') ? i - 1 : i;
+                handler.handleLine(new String(data, start, end - start, StandardCharsets.UTF_8));
+                if (handler.isClosed()) {
+                    return -1;
+                }
+                start = i + 1;
+            }
+        }
+        return start;
+    }
+
+    // Returns the offset of the first unconsumed byte, or -1 on a protocol
+    // error or once a frame has closed the connection
+    private int readFrames(byte[] data, int start, int limit) {
+        while (limit - start >= BinaryProtocol.HEADER_SIZE) {
+            int opcode = BinaryProtocol.opcode(data, start);
+            int length = 0;
+            if (BinaryProtocol.hasPayload(opcode)) {
+                length = BinaryProtocol.cell(data, start);
+                if (length > BinaryProtocol.MAX_PAYLOAD) {
+                    System.out.println("Oversized frame from " + handler.getPlayerName());
+                    return -1;
+                }
+                if (limit - start < BinaryProtocol.HEADER_SIZE + length) {
+                    break; // Payload not fully arrived yet
+                }
+            }
+            int payloadStart = start + BinaryProtocol.HEADER_SIZE;
+            handler.handleFrame(opcode, BinaryProtocol.cell(data, start), data, payloadStart, length);
+            if (handler.isClosed()) {
+                return -1;
+            }
+            start = payloadStart + length;
+        }
+        return start;
+    }
+
+    // Runs on the event loop thread
+    void writeOut() {
+        if (closed) {
+            return;
+        }
+        boolean failed = false;
+        synchronized (output) {
+            flushRequested = false;
+            if (overflowed) {
+                System.out.println("Dropping slow client " + handler.getPlayerName());
+                ServerMetrics.slowClientsDropped.increment();
+                failed = true;
+            } else {
+                try {
+                    byte[] array = output.array();
+                    if (writeView == null || writeView.array() != array) {
+                        writeView = ByteBuffer.wrap(array); // Only after the buffer has grown
+                    }
+                    writeView.clear().limit(output.size());
+                    output.consume(channel.write(writeView));
+                } catch (IOException e) {
+                    failed = true;
+                }
+            }
+            if (!failed && key != null && key.isValid()) {
+                // Only wait for writability while the socket is backed up
+                boolean pending = output.size() > 0;
+                try {
+                    key.interestOps(pending ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+                } catch (CancelledKeyException e) {
+                    failed = true; // Closed by another thread since isValid()
+                }
+            }
+        }
+        // Never call into the session while holding this connection's lock
+        if (failed) {
+            handler.connectionClosed();
+        }
+    }
+
+    // Runs on the event loop thread when handling this connection failed
+    // outside a read or write, e.g. its key was cancelled under the loop
+    void abort() {
+        handler.connectionClosed();
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            channel.close();
+        } catch (IOException e) {
+            System.out.println("Error closing socket: " + e.getMessage());
+        }
+    }
+}
\ No newline at end of file
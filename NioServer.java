@@ -0,0 +1,162 @@
+import java.io.*;
+import java.net.*;
+import java.nio.channels.*;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+// Selector-based server engine: one acceptor plus a small fixed pool of
+// event loops serve every connection, instead of one thread per player.
+public class NioServer {
+    private final int port;
+    private final Lobby lobby;
+    private final EventLoop[] loops;
+
+    public NioServer(int port, int loopCount, Lobby lobby) throws IOException {
+        this.port = port;
+        this.lobby = lobby;
+        this.loops = new EventLoop[loopCount];
+        for (int i = 0; i < loopCount; i++) {
+            loops[i] = new EventLoop("nio-loop-" + i);
+        }
+    }
+
+    public void run() throws IOException {
+        for (EventLoop loop : loops) {
+            loop.start();
+        }
+
+        ServerSocketChannel serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port), 1024);
+        System.out.println("NIO server started on port " + port + " with " + loops.length + " event loops...");
+
+        try {
+            int next = 0;
+            while (true) {
+                // The acceptor blocks; only the event loops use non-blocking channels
+                SocketChannel channel = serverChannel.accept();
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                System.out.println("Player connected from " + channel.getRemoteAddress());
+
+                EventLoop loop = loops[next];
+                next = (next + 1) % loops.length;
+                NioConnection connection = new NioConnection(channel, loop);
+                PlayerHandler handler = new PlayerHandler(connection, lobby);
+                connection.setHandler(handler);
+                handler.startIdleChecks();
+                loop.register(connection);
+            }
+        } finally {
+            serverChannel.close();
+            System.out.println("Server shutdown.");
+        }
+    }
+
+    // Bulk writes done per pass of an event loop before it goes back to
+    // reads and players' writes
+    private static final int BULK_WRITES_PER_PASS = 256;
+
+    // A selector thread that owns a subset of the connections
+    final class EventLoop extends Thread {
+        private final Selector selector;
+        private final ConcurrentLinkedQueue<NioConnection> pendingConnections = new ConcurrentLinkedQueue<>();
+        private final ConcurrentLinkedQueue<NioConnection> pendingFlushes = new ConcurrentLinkedQueue<>();
+        // Spectator traffic; a move watched by thousands must not delay the
+        // next move's read by thousands of writes
+        private final ConcurrentLinkedQueue<NioConnection> pendingBulkFlushes = new ConcurrentLinkedQueue<>();
+
+        EventLoop(String name) throws IOException {
+            super(name);
+            this.selector = Selector.open();
+        }
+
+        void register(NioConnection connection) {
+            pendingConnections.add(connection);
+            selector.wakeup();
+        }
+
+        // Called from any thread when a connection has new outbound bytes
+        void requestFlush(NioConnection connection, boolean bulk) {
+            (bulk ? pendingBulkFlushes : pendingFlushes).add(connection);
+            if (Thread.currentThread() != this) {
+                selector.wakeup();
+            }
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                try {
+                    // Bulk writes left over: just poll for I/O, then carry on with them
+                    if (pendingBulkFlushes.isEmpty()) {
+                        selector.select();
+                    } else {
+                        selector.selectNow();
+                    }
+                    registerPending();
+                    flushPending();
+
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        NioConnection connection = (NioConnection) key.attachment();
+                        try {
+                            if (!key.isValid()) {
+                                continue;
+                            }
+                            if (key.isReadable()) {
+                                connection.onReadable();
+                            }
+                            if (key.isValid() && key.isWritable()) {
+                                connection.writeOut();
+                            }
+                        } catch (CancelledKeyException e) {
+                            // Closed by another thread (idle check, resumed seat) since isValid()
+                            connection.abort();
+                        } catch (RuntimeException e) {
+                            System.err.println("Error on connection: " + e);
+                            connection.abort();
+                        }
+                    }
+                    // Handlers may have produced output while processing reads
+                    flushPending();
+                    flushBulk();
+                } catch (IOException e) {
+                    System.err.println("Event loop error: " + e.getMessage());
+                } catch (RuntimeException e) {
+                    // Never let one connection stop the loop for every other one on it
+                    System.err.println("Event loop error: " + e);
+                }
+            }
+        }
+
+        private void registerPending() {
+            NioConnection connection;
+            while ((connection = pendingConnections.poll()) != null) {
+                try {
+                    connection.register(selector);
+                    // Send anything queued before the channel was registered
+                    connection.writeOut();
+                } catch (IOException e) {
+                    System.err.println("Error registering connection: " + e.getMessage());
+                    connection.close();
+                }
+            }
+        }
+
+        private void flushPending() {
+            NioConnection connection;
+            while ((connection = pendingFlushes.poll()) != null) {
+                connection.writeOut();
+            }
+        }
+
+        private void flushBulk() {
+            NioConnection connection;
+            for (int i = 0; i < BULK_WRITES_PER_PASS && (connection = pendingBulkFlushes.poll()) != null; i++) {
+                connection.writeOut();
+            }
+        }
+    }
+}
\ No newline at end of file
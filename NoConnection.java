@@ -0,0 +1,21 @@
+// Connection for server-side players with no socket (BotPlayer,
+// AbsentPlayer): anything encoded into it is thrown away.
+public final class NoConnection implements PlayerConnection {
+    private final OutputBuffer output = new OutputBuffer(16);
+
+    @Override
+    public OutputBuffer output() {
+        return output;
+    }
+
+    @Override
+    public void flush() {
+        synchronized (output) {
+            output.clear();
+        }
+    }
+
+    @Override
+    public void close() {
+    }
+}
\ No newline at end of file
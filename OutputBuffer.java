@@ -0,0 +1,125 @@
+// Growable outbound byte buffer owned by one connection. Encoders append to
+// it while holding its monitor; the connection drains it to the socket.
+public class OutputBuffer {
+    private byte[] data;
+    private int size = 0;
+
+    public OutputBuffer(int initialCapacity) {
+        this.data = new byte[initialCapacity];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public byte[] array() {
+        return data;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    // Drops the first n bytes once they have been written out
+    public void consume(int n) {
+        System.arraycopy(data, n, data, 0, size - n);
+        size -= n;
+    }
+
+    // Discards everything written after the given size
+    public void truncate(int newSize) {
+        size = newSize;
+    }
+
+    private void ensureCapacity(int extra) {
+        if (size + extra > data.length) {
+            int capacity = data.length;
+            while (capacity < size + extra) {
+                capacity *= 2;
+            }
+            byte[] larger = new byte[capacity];
+            System.arraycopy(data, 0, larger, 0, size);
+            data = larger;
+        }
+    }
+
+    public void writeByte(int b) {
+        ensureCapacity(1);
+        data[size++] = (byte) b;
+    }
+
+    public void writeShort(int v) {
+        ensureCapacity(2);
+        data[size++] = (byte) (v >>> 8);
+        data[size++] = (byte) v;
+    }
+
+    public void writeInt(int v) {
+        ensureCapacity(4);
+        data[size++] = (byte) (v >>> 24);
+        data[size++] = (byte) (v >>> 16);
+        data[size++] = (byte) (v >>> 8);
+        data[size++] = (byte) v;
+    }
+
+    public void writeLong(long v) {
+        writeInt((int) (v >>> 32));
+        writeInt((int) v);
+    }
+
+    public void write(byte[] src, int offset, int length) {
+        ensureCapacity(length);
+        System.arraycopy(src, offset, data, size, length);
+        size += length;
+    }
+
+    // Overwrites two bytes already written, used to fill in a length field
+    public void patchShort(int position, int v) {
+        data[position] = (byte) (v >>> 8);
+        data[position + 1] = (byte) v;
+    }
+
+    // For protocol keywords, which are plain ASCII
+    public void writeAscii(String s) {
+        int length = s.length();
+        ensureCapacity(length);
+        for (int i = 0; i < length; i++) {
+            data[size++] = (byte) s.charAt(i);
+        }
+    }
+
+    // Non-negative decimal without going through Integer.toString
+    public void writeDecimal(int v) {
+        if (v >= 10) {
+            writeDecimal(v / 10);
+        }
+        writeByte('0' + v % 10);
+    }
+
+    // UTF-8 for user text (names, chat) without an intermediate byte[]
+    public void writeUtf8(String s) {
+        int length = s.length();
+        ensureCapacity(length * 3);
+        for (int i = 0; i < length; i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                data[size++] = (byte) c;
+            } else if (c < 0x800) {
+                data[size++] = (byte) (0xC0 | (c >> 6));
+                data[size++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, s.charAt(++i));
+                data[size++] = (byte) (0xF0 | (cp >> 18));
+                data[size++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                data[size++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                data[size++] = (byte) (0x80 | (cp & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                data[size++] = '?'; // Unpaired surrogate, as String.getBytes would
+            } else {
+                data[size++] = (byte) (0xE0 | (c >> 12));
+                data[size++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                data[size++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,142 @@
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+
+// Solved 3x3 tic-tac-toe. At class load a negamax search fills a
+// transposition table keyed by the canonical (symmetry-reduced) board, then
+// every reachable position gets its best move written into a table indexed
+// by the raw BitBoard int, so choosing a move afterwards is one array read.
+public final class PerfectPlay {
+    // cell -> cell under each of the 8 symmetries of the square
+    private static final int[][] SYMMETRIES = new int[8][BitBoard.CELLS];
+
+    // Negamax score of each canonical position for the side to move
+    private static final HashMap<Integer, Integer> scores = new HashMap<>();
+
+    // Best cell for the side to move, indexed by BitBoard; -1 if none
+    private static final byte[] BEST_MOVE = new byte[1 << 18];
+
+    private static int reachablePositions = 0;
+
+    static {
+        for (int s = 0; s < 8; s++) {
+            for (int cell = 0; cell < BitBoard.CELLS; cell++) {
+                int row = cell / 3;
+                int col = cell % 3;
+                // Rotate s % 4 quarter turns, then mirror for s >= 4
+                for (int turn = 0; turn < s % 4; turn++) {
+                    int rotated = col;
+                    col = 2 - row;
+                    row = rotated;
+                }
+                if (s >= 4) {
+                    col = 2 - col;
+                }
+                SYMMETRIES[s][cell] = BitBoard.cell(row, col);
+            }
+        }
+
+        Arrays.fill(BEST_MOVE, (byte) -1);
+        fillMoves(BitBoard.EMPTY, new BitSet(1 << 18));
+    }
+
+    private PerfectPlay() {
+    }
+
+    // Side to move: X moves first, so equal counts mean X
+    public static char toMove(int board) {
+        return Integer.bitCount(BitBoard.marks(board, 'X')) == Integer.bitCount(BitBoard.marks(board, 'O')) ? 'X' : 'O';
+    }
+
+    // Best cell for the side to move, or -1 if the game is over
+    public static int bestMove(int board) {
+        return BEST_MOVE[board];
+    }
+
+    // Number of distinct positions reachable in play, terminal ones included
+    public static int reachablePositions() {
+        return reachablePositions;
+    }
+
+    // Number of distinct positions up to symmetry that needed a search
+    public static int canonicalPositions() {
+        return scores.size();
+    }
+
+    public static int canonical(int board) {
+        int best = Integer.MAX_VALUE;
+        for (int[] symmetry : SYMMETRIES) {
+            int transformed = 0;
+            for (int cell = 0; cell < BitBoard.CELLS; cell++) {
+                char mark = BitBoard.get(board, cell);
+                if (mark != ' ') {
+                    transformed = BitBoard.place(transformed, symmetry[cell], mark);
+                }
+            }
+            best = Math.min(best, transformed);
+        }
+        return best;
+    }
+
+    // Score for the side to move: positive wins (sooner is higher), 0 draws,
+    // negative loses. Only called on positions where the game is still on.
+    private static int negamax(int board) {
+        int key = canonical(board);
+        Integer cached = scores.get(key);
+        if (cached != null) {
+            return cached;
+        }
+
+        char mark = toMove(board);
+        int best = Integer.MIN_VALUE;
+        for (int cell = 0; cell < BitBoard.CELLS; cell++) {
+            if (BitBoard.isEmpty(board, cell)) {
+                best = Math.max(best, moveScore(board, cell, mark));
+            }
+        }
+        scores.put(key, best);
+        return best;
+    }
+
+    private static int moveScore(int board, int cell, char mark) {
+        int next = BitBoard.place(board, cell, mark);
+        char result = BitBoard.result(next, mark);
+        if (result == mark) {
+            return 1 + BitBoard.CELLS - Integer.bitCount(next); // Win; empty cells left make it sooner
+        }
+        if (result == 'D') {
+            return 0;
+        }
+        return -negamax(next);
+    }
+
+    private static void fillMoves(int board, BitSet visited) {
+        if (visited.get(board)) {
+            return;
+        }
+        visited.set(board);
+        reachablePositions++;
+
+        char mark = toMove(board);
+        int bestCell = -1;
+        int bestScore = Integer.MIN_VALUE;
+        for (int cell = 0; cell < BitBoard.CELLS; cell++) {
+            if (!BitBoard.isEmpty(board, cell)) {
+                continue;
+            }
+            int score = moveScore(board, cell, mark);
+            if (score > bestScore) {
+                bestScore = score;
+                bestCell = cell;
+            }
+            int next = BitBoard.place(board, cell, mark);
+            if (BitBoard.result(next, mark) == ' ') {
+                fillMoves(next, visited);
+            } else if (!visited.get(next)) {
+                visited.set(next);
+                reachablePositions++; // Terminal position
+            }
+        }
+        BEST_MOVE[board] = (byte) bestCell;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,16 @@
+// Outbound side of a player's connection, independent of the server engine.
+// Messages are encoded straight into output() while holding its monitor,
+// then flush() hands everything buffered so far to the transport.
+public interface PlayerConnection {
+    OutputBuffer output();
+
+    void flush();
+
+    // Same as flush() for traffic that can wait behind players' messages,
+    // such as spectator feeds; engines that can prioritise override it
+    default void flushBulk() {
+        flush();
+    }
+
+    void close();
+}
\ No newline at end of file
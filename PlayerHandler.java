@@ -1,185 +1,668 @@
 import java.io.*;
 import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 
-public class PlayerHandler extends Thread {
-    private final Socket socket;
-    private final BufferedReader in;
-    private final PrintWriter out;
-    private PlayerHandler opponent;
-    private final char mark;
+public class PlayerHandler implements Runnable {
+    private final PlayerConnection connection;
+    private final InputStream in; // Only used when this handler owns a blocking socket
+    private final Lobby lobby;
+    private volatile char mark = ' '; // Assigned when the lobby pairs this player
     private String playerName = "Player";
-    private boolean myTurn;
-    private boolean gameEnded = false;
-    private boolean wantsRestart = false;
-    private boolean disconnected = false;
-    private char[][] board; // Reference to shared game board
-
-    public PlayerHandler(Socket socket, char mark, char[][] board) throws IOException {
-        this.socket = socket;
+    private volatile GameSession session; // Match this player belongs to
+    private volatile SpectatorFeed watching; // Match this connection spectates instead
+    private SpectatorFeed.Watcher watcher; // Its entry in that feed; fan-out thread only
+    private boolean binary = false; // Negotiated from the first byte the client sends
+    private boolean inLobby = false;
+    private boolean watchingLobby = false; // A GameRouter's lobby watch, not a player
+    private TokenBucket chatLimit; // Created on the first chat message
+    private boolean chatThrottled = false; // Told about the limit since its last accepted message
+    private volatile boolean closed = false;
+    private volatile long lastHeard = System.nanoTime(); // When the client last sent anything
+
+    public PlayerHandler(Socket socket, Lobby lobby, Executor writers) throws IOException {
+        SocketConnection socketConnection = new SocketConnection(socket, writers);
+        this.connection = socketConnection;
+        this.in = socketConnection.input();
+        this.lobby = lobby;
+        ServerMetrics.connectionsOpened.increment();
+    }
+
+    // Handler whose input is pushed in by an event loop through handleLine()/handleFrame()
+    public PlayerHandler(PlayerConnection connection, Lobby lobby) {
+        this.connection = connection;
+        this.in = null;
+        this.lobby = lobby;
+        ServerMetrics.connectionsOpened.increment();
+    }
+
+    // Server-side player with no socket behind it (see BotPlayer); not
+    // counted as a connection
+    protected PlayerHandler(PlayerConnection connection, String playerName) {
+        this.connection = connection;
+        this.in = null;
+        this.lobby = null;
+        this.playerName = playerName;
+    }
+
+    // Called by the registry when the lobby pairs this player
+    public void joinMatch(GameSession session, char mark) {
         this.mark = mark;
-        this.in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-        this.out = new PrintWriter(socket.getOutputStream(), true);
-        this.myTurn = (mark == 'X'); // X always starts
-        this.board = board;
+        boolean wasClosed;
+        synchronized (this) {
+            // Same lock as connectionClosed(), so exactly one of the two
+            // tells the session if the connection dropped while being matched
+            this.session = session;
+            wasClosed = closed;
+        }
+        if (wasClosed) {
+            session.playerDisconnected(this);
+            return;
+        }
+        if (lobby != null) {
+            lobby.chat().leaveLobby(this);
+        }
+        System.out.println(playerName + " joined as Player " + mark);
     }
 
-    public void setOpponent(PlayerHandler opponent) {
-        this.opponent = opponent;
+    public GameSession getSession() {
+        return session;
     }
 
-    public void sendMessage(String message) {
-        out.println(message);
+    public char getMark() {
+        return mark;
+    }
+
+    public String getPlayerName() {
+        return playerName;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    // Set by the session when this connection starts spectating
+    void startWatching(SpectatorFeed feed) {
+        this.watching = feed;
+    }
+
+    void stopWatching(SpectatorFeed feed) {
+        if (watching == feed) {
+            watching = null;
+        }
+    }
+
+    void setWatcher(SpectatorFeed.Watcher watcher) {
+        this.watcher = watcher;
+    }
+
+    SpectatorFeed.Watcher getWatcher() {
+        return watcher;
+    }
+
+    // Spectator feeds append frames they have already encoded
+    OutputBuffer output() {
+        return connection.output();
+    }
+
+    public void setBinary(boolean binary) {
+        this.binary = binary;
+    }
+
+    public boolean isBinary() {
+        return binary;
+    }
+
+    private int matchId() {
+        GameSession current = session;
+        return current == null ? 0 : (int) current.getMatchId();
+    }
+
+    // Outbound messages. Each one is encoded straight into the connection's
+    // buffer in whichever protocol this client speaks; nothing reaches the
+    // socket until flush(), so one state change goes out as one write.
+
+    public void flush() {
+        connection.flush();
+    }
+
+    // For spectator traffic, which may wait behind players' messages
+    void flushBulk() {
+        connection.flushBulk();
+    }
+
+    public void sendBoard(int size, int winLength) {
+        OutputBuffer out = connection.output();
+        synchronized (out) {
+            if (binary) {
+                BinaryProtocol.writeFrame(out, BinaryProtocol.BOARD, winLength, size, matchId());
+            } else {
+                out.writeAscii("BOARD ");
+                out.writeDecimal(size);
+                out.writeByte(' ');
+                out.writeDecimal(winLength);
+                out.writeByte('\n');
+            }
+        }
+    }
+
+    public void sendAssignment() {
+        OutputBuffer out = connection.output();
+        synchronized (out) {
+            if (binary) {
+                BinaryProtocol.writeFrame(out, BinaryProtocol.ASSIGN, mark, 0, matchId());
+            } else {
+                out.writeAscii("You are ");
+                out.writeByte(mark);
+                out.writeByte('\n');
+            }
+        }
+    }
+
+    public void sendTurn(boolean yourTurn) {
+        OutputBuffer out = connection.output();
+        synchronized (out) {
+            if (binary) {
+                BinaryProtocol.writeFrame(out, BinaryProtocol.TURN, yourTurn ? 1 : 0, 0, matchId());
+            } else {
+                out.writeAscii(yourTurn ? "Your turn\n" : "Opponent's turn\n");
+            }
+        }
+    }
+
+    public void sendMove(char moveMark, int row, int col, int boardSize) {
+        OutputBuffer out = connection.output();
+        synchronized (out) {
+            if (binary) {
+                BinaryProtocol.writeFrame(out, BinaryProtocol.MOVE, moveMark, row * boardSize + col, matchId());
+            } else {
+                out.writeAscii("Move ");
+                out.writeByte(moveMark);
+                out.writeByte(' ');
+                out.writeDecimal(row);
+                out.writeByte(',');
+                out.writeDecimal(col);
+                out.writeByte('\n');
+            }
+        }
+    }
+
+    // result is the winning mark, 'D' for a draw or '-' when the match was abandoned
+    public void sendGameOver(char result, String text) {
+        OutputBuffer out = connection.output();
+        synchronized (out) {
+            if (binary) {
+                BinaryProtocol.writeTextFrame(out, BinaryProtocol.GAME_OVER, result, matchId(), text);
+            } else {
+                out.writeAscii("GAME_OVER ");
+                out.writeUtf8(text);
+                out.writeByte('\n');
+            }
+        }
+    }
+
+    public void sendChat(String text) {
+        OutputBuffer out = connection.output();
+        synchronized (out) {
+            if (binary) {
+                BinaryProtocol.writeTextFrame(out, BinaryProtocol.CHAT, 0, matchId(), text);
+            } else {
+                out.writeAscii("Chat ");
+                out.writeUtf8(text);
+                out.writeByte('\n');
+            }
+        }
+    }
+
+    public void sendHint(int row, int col) {
+        OutputBuffer out = connection.output();
+        synchronized (out) {
+            if (binary) {
+                GameSession current = session;
+                int boardSize = current == null ? 3 : current.getBoardSize();
+                BinaryProtocol.writeFrame(out, BinaryProtocol.HINT, 0, row * boardSize + col, matchId());
+            } else {
+                out.writeAscii("HINT ");
+                out.writeDecimal(row);
+                out.writeByte(',');
+                out.writeDecimal(col);
+                out.writeByte('\n');
+            }
+        }
+    }
+
+    // Secret this client presents in "NAME <name> RESUME <token>" to take its
+    // seat back after losing the connection or a server restart
+    public void sendToken(String token) {
+        OutputBuffer out = connection.output();
+        synchronized (out) {
+            if (binary) {
+                BinaryProtocol.writeTextFrame(out, BinaryProtocol.TOKEN, 0, matchId(), token);
+            } else {
+                out.writeAscii("TOKEN ");
+                out.writeAscii(token);
+                out.writeByte('\n');
+            }
+        }
+    }
+
+    // Whole board in one message for a resumed seat: one of '.', 'X', 'O'
+    // per cell, row by row, then the mark to move or '-' if the game is over
+    public void sendState(Board board, char turn) {
+        int size = board.size();
+        StringBuilder cells = new StringBuilder(size * size);
+        for (int row = 0; row < size; row++) {
+            for (int col = 0; col < size; col++) {
+                char c = board.get(row, col);
+                cells.append(c == 'X' || c == 'O' ? c : '.');
+            }
+        }
+        OutputBuffer out = connection.output();
+        synchronized (out) {
+            if (binary) {
+                BinaryProtocol.writeTextFrame(out, BinaryProtocol.STATE, turn, matchId(), cells.toString());
+            } else {
+                out.writeAscii("STATE ");
+                out.writeAscii(cells.toString());
+                out.writeByte(' ');
+                out.writeByte(turn);
+                out.writeByte('\n');
+            }
+        }
+    }
+
+    private void sendPing() {
+        OutputBuffer out = connection.output();
+        synchronized (out) {
+            if (binary) {
+                BinaryProtocol.writeFrame(out, BinaryProtocol.PING, 0, 0, matchId());
+            } else {
+                out.writeAscii("PING\n");
+            }
+        }
     }
 
-    public boolean wantsRestart() {
-        return wantsRestart;
+    private void sendPong() {
+        OutputBuffer out = connection.output();
+        synchronized (out) {
+            if (binary) {
+                BinaryProtocol.writeFrame(out, BinaryProtocol.PONG, 0, 0, matchId());
+            } else {
+                out.writeAscii("PONG\n");
+            }
+        }
+        flush();
     }
 
-    public boolean isDisconnected() {
-        return disconnected;
+    // Text only: the one client that asks for these is GameRouter
+    void sendLobby(int waiting, int players) {
+        OutputBuffer out = connection.output();
+        synchronized (out) {
+            out.writeAscii("LOBBY " + waiting + " " + players + "\n");
+        }
+        flush();
     }
 
-    public void resetGame() {
-        gameEnded = false;
-        wantsRestart = false;
-        myTurn = (mark == 'X');
+    public void sendReset() {
+        OutputBuffer out = connection.output();
+        synchronized (out) {
+            if (binary) {
+                BinaryProtocol.writeFrame(out, BinaryProtocol.RESET, 0, 0, matchId());
+            } else {
+                out.writeAscii("RESET_GAME\n");
+            }
+        }
     }
 
     public void run() {
+        startIdleChecks();
         try {
-            String line;
-            while ((line = in.readLine()) != null) {
-                if (line.startsWith("NAME ")) {
-                    playerName = line.substring(5);
-                    System.out.println(playerName + " joined as Player " + mark);
-                } else if (line.startsWith("Chat ")) {
-                    String chatMsg = "Chat " + playerName + ": " + line.substring(5);
-                    sendMessage(chatMsg);
-                    if (opponent != null) opponent.sendMessage(chatMsg);
-                } else if (line.startsWith("Move ") && !gameEnded) {
-                    if (myTurn && opponent != null) {
-                        // Parse move
-                        String[] parts = line.split(" ");
-                        if (parts.length == 2) {
-                            String[] coords = parts[1].split(",");
-                            int row = Integer.parseInt(coords[0]);
-                            int col = Integer.parseInt(coords[1]);
-
-                            // Check if valid move (in bounds and empty cell)
-                            if (row >= 0 && row < 3 && col >= 0 && col < 3 && board[row][col] == ' ') {
-                                // Update board state
-                                board[row][col] = mark;
-
-                                // Broadcast move to both players
-                                String moveMsg = "Move " + mark + " " + row + "," + col;
-                                sendMessage(moveMsg);
-                                opponent.sendMessage(moveMsg);
-
-                                // Check for win or draw
-                                char gameResult = checkGameState(row, col);
-                                if (gameResult == mark) {
-                                    // Win condition
-                                    gameEnded = true;
-                                    opponent.gameEnded = true;
-                                    String winMsg = "GAME_OVER " + playerName + " wins!";
-                                    sendMessage(winMsg);
-                                    opponent.sendMessage(winMsg);
-                                } else if (gameResult == 'D') {
-                                    // Draw condition
-                                    gameEnded = true;
-                                    opponent.gameEnded = true;
-                                    String drawMsg = "GAME_OVER Draw!";
-                                    sendMessage(drawMsg);
-                                    opponent.sendMessage(drawMsg);
-                                } else {
-                                    // Continue game, switch turns
-                                    myTurn = false;
-                                    opponent.myTurn = true;
-
-                                    sendMessage("Opponent's turn");
-                                    opponent.sendMessage("Your turn");
-                                }
-                            }
-                        }
-                    }
-                } else if (line.equals("RESTART") && gameEnded) {
-                    // Player wants to restart
-                    wantsRestart = true;
-                    sendMessage("Chat System: Waiting for opponent to restart...");
-
-                    // Notify opponent
-                    if (opponent != null) {
-                        opponent.sendMessage("Chat System: " + playerName + " wants to restart the game.");
-
-                        // If both players want to restart, the GameMonitorThread will handle it
-                        if (opponent.wantsRestart) {
-                            sendMessage("Chat System: Both players ready. Starting new game...");
-                            opponent.sendMessage("Chat System: Both players ready. Starting new game...");
-                        }
-                    }
-                }
+            // Peek at the first byte to pick the protocol
+            in.mark(1);
+            int first = in.read();
+            if (first == BinaryProtocol.MAGIC) {
+                binary = true;
+                readFrames(new DataInputStream(in));
+            } else if (first != -1) {
+                in.reset();
+                readLines(new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 512));
             }
         } catch (IOException e) {
             System.out.println("Connection lost for " + playerName);
-            disconnected = true;
-            if (opponent != null && !opponent.gameEnded) {
-                opponent.sendMessage("GAME_OVER Opponent disconnected");
-                opponent.gameEnded = true;
-            }
         } finally {
-            try {
-                socket.close();
-                disconnected = true;
-            } catch (IOException e) {
-                System.out.println("Error closing socket: " + e.getMessage());
+            connectionClosed();
+        }
+    }
+
+    private void readLines(BufferedReader reader) throws IOException {
+        String line;
+        while ((line = reader.readLine()) != null) {
+            handleLine(line);
+        }
+    }
+
+    private void readFrames(DataInputStream input) throws IOException {
+        byte[] header = new byte[BinaryProtocol.HEADER_SIZE];
+        byte[] payload = new byte[BinaryProtocol.MAX_PAYLOAD];
+        while (true) {
+            input.readFully(header);
+            int opcode = BinaryProtocol.opcode(header, 0);
+            int length = 0;
+            if (BinaryProtocol.hasPayload(opcode)) {
+                length = BinaryProtocol.cell(header, 0);
+                if (length > BinaryProtocol.MAX_PAYLOAD) {
+                    System.out.println("Oversized frame from " + playerName);
+                    return;
+                }
+                input.readFully(payload, 0, length);
             }
+            handleFrame(opcode, BinaryProtocol.cell(header, 0), payload, 0, length);
         }
     }
 
-    private char checkGameState(int lastRow, int lastCol) {
-        // Check for win
+    public void handleLine(String line) {
+        ServerMetrics.messagesReceived.increment();
+        lastHeard = System.nanoTime(); // Any message counts, PONG included
+        if (line.startsWith("NAME ")) {
+            introduce(line.substring(5));
+        } else if (line.startsWith("Chat ")) {
+            chat(line.substring(5));
+        } else if (line.startsWith("Move ")) {
+            // Parse "Move row,col" in place rather than splitting
+            int comma = line.indexOf(',', 5);
+            if (comma > 0) {
+                int row = parseNumber(line, 5, comma);
+                int col = parseNumber(line, comma + 1, line.length());
+                if (row >= 0 && col >= 0) {
+                    move(row, col);
+                }
+            }
+        } else if (line.startsWith("WATCH ")) {
+            watch(line.substring(6));
+        } else if (line.equals("HINT")) {
+            hint();
+        } else if (line.equals("RANK")) {
+            rank();
+        } else if (line.equals("TOP") || line.startsWith("TOP ")) {
+            top(line.length() > 4 ? parseNumber(line, 4, line.length()) : 0);
+        } else if (line.equals("RESTART")) {
+            // Player wants to restart
+            restart();
+        } else if (line.equals("PING")) {
+            sendPong();
+        } else if (line.equals("LOBBY")) {
+            watchLobby();
+        }
+    }
 
-        // Check row
-        if (board[lastRow][0] == mark && board[lastRow][1] == mark && board[lastRow][2] == mark) {
-            return mark; // Win
+    // Dispatches one binary frame; data[offset, offset + length) is its UTF-8 payload
+    public void handleFrame(int opcode, int cell, byte[] data, int offset, int length) {
+        ServerMetrics.messagesReceived.increment();
+        lastHeard = System.nanoTime();
+        switch (opcode) {
+            case BinaryProtocol.NAME:
+                introduce(new String(data, offset, length, StandardCharsets.UTF_8));
+                break;
+            case BinaryProtocol.CHAT:
+                chat(new String(data, offset, length, StandardCharsets.UTF_8));
+                break;
+            case BinaryProtocol.MOVE:
+                GameSession current = session;
+                if (current != null) {
+                    int size = current.getBoardSize();
+                    move(cell / size, cell % size);
+                }
+                break;
+            case BinaryProtocol.HINT:
+                hint();
+                break;
+            case BinaryProtocol.WATCH:
+                watch(new String(data, offset, length, StandardCharsets.UTF_8));
+                break;
+            case BinaryProtocol.RANK:
+                rank();
+                break;
+            case BinaryProtocol.TOP:
+                top(cell);
+                break;
+            case BinaryProtocol.RESTART:
+                restart();
+                break;
+            case BinaryProtocol.PING:
+                sendPong();
+                break;
+            default:
+                // Unknown opcodes are ignored so newer clients still work
+                break;
         }
+    }
+
+    // Half-open connections send nothing and never fail a read, so silence
+    // is the only sign. After a third of the idle limit without a message
+    // the client is sent a PING (clients answer with PONG); after the whole
+    // limit the connection is closed like a dropped one, which frees its
+    // thread and lets the grace period end its match. One timer per
+    // connection, re-armed when it fires rather than on every message.
+    void startIdleChecks() {
+        scheduleIdleCheck(lobby.getIdleMillis() / 3);
+    }
 
-        // Check column
-        if (board[0][lastCol] == mark && board[1][lastCol] == mark && board[2][lastCol] == mark) {
-            return mark; // Win
+    private void scheduleIdleCheck(long delayMillis) {
+        if (delayMillis > 0) {
+            lobby.schedule(this::checkIdle, delayMillis);
         }
+    }
 
-        // Check diagonals
-        if (lastRow == lastCol) {
-            // Main diagonal
-            if (board[0][0] == mark && board[1][1] == mark && board[2][2] == mark) {
-                return mark; // Win
-            }
+    private void checkIdle() {
+        long limit = lobby.getIdleMillis();
+        if (closed || limit <= 0) {
+            return;
         }
+        long silent = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - lastHeard);
+        if (silent >= limit) {
+            System.out.println("Closing idle connection for " + playerName + " (silent for "
+                    + TimeUnit.MILLISECONDS.toSeconds(silent) + " s)");
+            ServerMetrics.idleConnectionsClosed.increment();
+            connectionClosed();
+            return;
+        }
+        long pingAfter = limit / 3;
+        if (silent >= pingAfter) {
+            sendPing();
+            flush();
+            ServerMetrics.pingsSent.increment();
+            scheduleIdleCheck(limit - silent);
+        } else {
+            scheduleIdleCheck(pingAfter - silent);
+        }
+    }
 
-        if (lastRow + lastCol == 2) {
-            // Other diagonal
-            if (board[0][2] == mark && board[1][1] == mark && board[2][0] == mark) {
-                return mark; // Win
+    // Non-negative decimal in line[from, to), or -1 if it isn't one
+    private static int parseNumber(String line, int from, int to) {
+        if (from >= to || to - from > 5) {
+            return -1;
+        }
+        int value = 0;
+        for (int i = from; i < to; i++) {
+            char c = line.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
             }
+            value = value * 10 + (c - '0');
         }
+        return value;
+    }
 
-        // Check for draw (board full)
-        boolean boardFull = true;
-        for (int i = 0; i < 3; i++) {
-            for (int j = 0; j < 3; j++) {
-                if (board[i][j] == ' ') {
-                    boardFull = false;
-                    break;
-                }
+    private void chat(String text) {
+        if (lobby == null) {
+            return;
+        }
+        ChatService chat = lobby.chat();
+        if (chatLimit == null) {
+            chatLimit = chat.newLimit();
+        }
+        if (!chatLimit.tryTake()) {
+            // Dropped before any formatting; tell the sender once per flood
+            ServerMetrics.chatThrottled.increment();
+            if (!chatThrottled) {
+                chatThrottled = true;
+                sendChat("System: You are sending messages too fast; some were not delivered.");
+                flush();
             }
-            if (!boardFull) break;
+            return;
         }
+        chatThrottled = false;
+        chat.post(this, text);
+    }
 
-        if (boardFull) {
-            return 'D'; // Draw
+    // Answered straight from the leaderboard indexes; never waits on updates
+    private void rank() {
+        if (lobby == null) {
+            return;
+        }
+        Ratings ratings = lobby.ratings();
+        Ratings.Standing standing = ratings.get(playerName);
+        if (standing == null) {
+            sendChat("System: " + playerName + " has no rating yet.");
+        } else {
+            sendChat("System: " + playerName + " is rated " + standing.wholeRating() + " after " + games(standing)
+                    + ", rank " + ratings.rank(standing) + " of " + ratings.players() + ".");
         }
+        flush();
+    }
 
-        return ' '; // Game continues
+    private void top(int count) {
+        if (lobby == null) {
+            return;
+        }
+        Ratings ratings = lobby.ratings();
+        List<Ratings.Standing> top = ratings.top(count <= 0 ? 10 : Math.min(count, 50));
+        sendChat("System: Top " + top.size() + " of " + ratings.players() + " rated players:");
+        for (int i = 0; i < top.size(); i++) {
+            Ratings.Standing standing = top.get(i);
+            sendChat("System: " + (i + 1) + ". " + standing.name() + " " + standing.wholeRating()
+                    + " (" + games(standing) + ")");
+        }
+        flush();
+    }
+
+    private static String games(Ratings.Standing standing) {
+        return standing.games() + (standing.games() == 1 ? " game" : " games");
+    }
+
+    private void move(int row, int col) {
+        GameSession current = session;
+        if (current != null) {
+            current.makeMove(this, row, col);
+        }
+    }
+
+    private void hint() {
+        GameSession current = session;
+        if (current != null) {
+            current.requestHint(this);
+        }
+    }
+
+    private void restart() {
+        GameSession current = session;
+        if (current != null) {
+            current.requestRestart(this);
+        }
+    }
+
+    // "<name>" joins the lobby; "<name> RESUME <token>" first tries to take
+    // back a seat in the match the token belongs to
+    private void introduce(String text) {
+        int resume = text.lastIndexOf(" RESUME ");
+        if (resume < 0) {
+            playerName = text;
+            enterLobby();
+            return;
+        }
+        playerName = text.substring(0, resume);
+        if (inLobby || session != null || !lobby.resume(this, text.substring(resume + 8))) {
+            enterLobby();
+        }
+    }
+
+    // The token matched but the match closed before the seat was handed
+    // back; play someone new instead
+    void resumeFailed() {
+        sendChat("System: That match is over. Finding you a new opponent...");
+        flush();
+        enterLobby();
+    }
+
+    // Spectate a match; only for connections that are not playing
+    private void watch(String matchId) {
+        if (inLobby || session != null) {
+            return;
+        }
+        SpectatorFeed previous = watching;
+        if (previous != null) {
+            watching = null;
+            previous.leave(this);
+        }
+        boolean found;
+        try {
+            found = lobby.watch(this, Long.parseLong(matchId.trim()));
+        } catch (NumberFormatException e) {
+            found = false;
+        }
+        if (!found) {
+            sendChat("System: No match " + matchId.trim() + " to watch.");
+            flush();
+        }
+    }
+
+    // A router in front of this node wants to know where new players can
+    // be paired; only for connections that are not playing
+    private void watchLobby() {
+        if (inLobby || session != null || watching != null || watchingLobby) {
+            return;
+        }
+        watchingLobby = true;
+        lobby.addWatcher(this);
+    }
+
+    private void enterLobby() {
+        // Matchmaking starts once the player has introduced themselves
+        if (!inLobby && session == null && watching == null && !watchingLobby) {
+            inLobby = true;
+            lobby.chat().enterLobby(this);
+            lobby.join(this);
+        }
+    }
+
+    public void connectionClosed() {
+        GameSession current;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            current = session;
+        }
+        ServerMetrics.connectionsClosed.increment();
+        if (inLobby) {
+            lobby.chat().leaveLobby(this);
+        }
+        if (watchingLobby) {
+            lobby.removeWatcher(this);
+        }
+        if (lobby != null) {
+            lobby.changed();
+        }
+        if (current != null) {
+            current.playerDisconnected(this);
+        }
+        SpectatorFeed feed = watching;
+        if (feed != null) {
+            feed.leave(this);
+        }
+        connection.close();
     }
 }
\ No newline at end of file
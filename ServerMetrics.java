@@ -0,0 +1,129 @@
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// Server-wide counters and histograms. Everything here is striped
+// (LongAdder) so recording from handler threads and event loops never
+// takes a lock; only rendering walks the stripes.
+public final class ServerMetrics {
+    public static final LongAdder connectionsOpened = new LongAdder();
+    public static final LongAdder connectionsClosed = new LongAdder();
+    public static final LongAdder slowClientsDropped = new LongAdder();
+    public static final LongAdder messagesReceived = new LongAdder();
+    public static final LongAdder matchesStarted = new LongAdder();
+    public static final LongAdder matchesFinished = new LongAdder();
+    public static final LongAdder gamesCompleted = new LongAdder(); // Wins and draws, including restarted games
+    public static final LongAdder moves = new LongAdder();
+    public static final LongAdder journalRecords = new LongAdder();
+    public static final LongAdder journalCommits = new LongAdder(); // One write + fsync each
+    public static final LongAdder journalSnapshots = new LongAdder();
+    public static final LongAdder seatsHeld = new LongAdder(); // Dropped players given a grace period
+    public static final LongAdder seatsResumed = new LongAdder();
+    public static final LongAdder spectatorsJoined = new LongAdder();
+    public static final LongAdder spectatorsLeft = new LongAdder();
+    public static final LongAdder spectatorsBehind = new LongAdder(); // Times a watcher fell behind and was resynced
+    public static final LongAdder chatMessages = new LongAdder(); // Accepted from senders
+    public static final LongAdder chatThrottled = new LongAdder(); // Refused by a sender's rate limit
+    public static final LongAdder chatDropped = new LongAdder(); // Not written to a lobby member too far behind
+    public static final LongAdder chatBatches = new LongAdder();
+    public static final LongAdder ratedGames = new LongAdder();
+    public static final LongAdder pingsSent = new LongAdder(); // To connections that had gone quiet
+    public static final LongAdder idleConnectionsClosed = new LongAdder();
+    public static final LongAdder turnsTimedOut = new LongAdder(); // Games forfeited on the turn clock
+    public static final LongAdder solverSearches = new LongAdder();
+    public static final LongAdder solverNodes = new LongAdder();
+    public static final LongAdder solverNanos = new LongAdder();
+
+    // From a move arriving at its session until the result has been encoded and flushed
+    public static final LatencyHistogram moveLatencyMicros = new LatencyHistogram();
+    // From the first restart vote until the new game starts
+    public static final LatencyHistogram restartLatencyMicros = new LatencyHistogram();
+    // Bytes waiting in a connection's output buffer each time it is flushed
+    public static final LatencyHistogram outboundQueueBytes = new LatencyHistogram();
+
+    private static final long startedAt = System.nanoTime();
+    private static long lastRenderAt = startedAt;
+    private static long lastMatchesStarted = 0;
+    private static long lastMatchesFinished = 0;
+    private static long lastMoves = 0;
+
+    private ServerMetrics() {
+    }
+
+    public static long micros(long fromNanos) {
+        return TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - fromNanos);
+    }
+
+    // Plain-text snapshot, one "name value" per line. Rates are per second
+    // since the previous snapshot.
+    public static synchronized String render(MatchRegistry registry, Lobby lobby) {
+        long now = System.nanoTime();
+        double interval = Math.max(1e-3, (now - lastRenderAt) / 1e9);
+        long started = matchesStarted.sum();
+        long finished = matchesFinished.sum();
+        long moveCount = moves.sum();
+
+        StringBuilder sb = new StringBuilder(2048);
+        line(sb, "uptime_seconds", (now - startedAt) / 1_000_000_000L);
+        line(sb, "connections_active", connectionsOpened.sum() - connectionsClosed.sum());
+        line(sb, "connections_opened_total", connectionsOpened.sum());
+        line(sb, "slow_clients_dropped_total", slowClientsDropped.sum());
+        line(sb, "messages_received_total", messagesReceived.sum());
+        line(sb, "lobby_waiting", lobby.waitingPlayers());
+        line(sb, "matches_active", registry.activeMatches());
+        line(sb, "matches_started_total", started);
+        line(sb, "matches_finished_total", finished);
+        rate(sb, "matches_started_per_second", started - lastMatchesStarted, interval);
+        rate(sb, "matches_finished_per_second", finished - lastMatchesFinished, interval);
+        line(sb, "games_completed_total", gamesCompleted.sum());
+        line(sb, "moves_total", moveCount);
+        rate(sb, "moves_per_second", moveCount - lastMoves, interval);
+        line(sb, "journal_records_total", journalRecords.sum());
+        line(sb, "journal_commits_total", journalCommits.sum());
+        line(sb, "journal_snapshots_total", journalSnapshots.sum());
+        line(sb, "seats_held_total", seatsHeld.sum());
+        line(sb, "seats_resumed_total", seatsResumed.sum());
+        line(sb, "spectators_active", spectatorsJoined.sum() - spectatorsLeft.sum());
+        line(sb, "spectators_behind_total", spectatorsBehind.sum());
+        line(sb, "chat_messages_total", chatMessages.sum());
+        line(sb, "chat_throttled_total", chatThrottled.sum());
+        line(sb, "chat_dropped_total", chatDropped.sum());
+        line(sb, "chat_batches_total", chatBatches.sum());
+        line(sb, "rated_games_total", ratedGames.sum());
+        line(sb, "rated_players", registry.ratings().players());
+        line(sb, "pings_sent_total", pingsSent.sum());
+        line(sb, "idle_connections_closed_total", idleConnectionsClosed.sum());
+        line(sb, "turns_timed_out_total", turnsTimedOut.sum());
+        line(sb, "timers_pending", registry.pendingTimers());
+        line(sb, "solver_searches_total", solverSearches.sum());
+        line(sb, "solver_nodes_total", solverNodes.sum());
+        long solverNanosTotal = solverNanos.sum();
+        line(sb, "solver_nodes_per_second", solverNanosTotal == 0 ? 0 : solverNodes.sum() * 1_000_000_000L / solverNanosTotal);
+        histogram(sb, "move_latency_micros", moveLatencyMicros);
+        histogram(sb, "restart_latency_micros", restartLatencyMicros);
+        histogram(sb, "outbound_queue_bytes", outboundQueueBytes);
+
+        lastRenderAt = now;
+        lastMatchesStarted = started;
+        lastMatchesFinished = finished;
+        lastMoves = moveCount;
+        return sb.toString();
+    }
+
+    private static void line(StringBuilder sb, String name, long value) {
+        sb.append("tictactoe_").append(name).append(' ').append(value).append('\n');
+    }
+
+    private static void rate(StringBuilder sb, String name, long delta, double seconds) {
+        sb.append("tictactoe_").append(name).append(' ')
+                .append(String.format("%.2f", delta / seconds)).append('\n');
+    }
+
+    private static void histogram(StringBuilder sb, String name, LatencyHistogram histogram) {
+        line(sb, name + "_count", histogram.count());
+        line(sb, name + "_sum", histogram.sum());
+        line(sb, name + "_p50", histogram.quantile(0.50));
+        line(sb, name + "_p90", histogram.quantile(0.90));
+        line(sb, name + "_p99", histogram.quantile(0.99));
+        line(sb, name + "_max", histogram.max());
+    }
+}
\ No newline at end of file
@@ -0,0 +1,101 @@
+import java.io.*;
+import java.net.*;
+import java.util.concurrent.Executor;
+
+// Blocking socket connection used by the thread-per-connection engines.
+// Socket writes run on a writer task, never on the thread that produced
+// the message, so a stalled client cannot block its opponent's handler.
+public class SocketConnection implements PlayerConnection {
+    // A client this far behind is not reading; drop it rather than buffer forever
+    public static final int MAX_PENDING_BYTES = 64 * 1024;
+
+    private final Socket socket;
+    private final InputStream in;
+    private final OutputStream out;
+    private final Executor writers;
+    private final OutputBuffer output = new OutputBuffer(256);
+    private byte[] pending = new byte[256]; // Only touched by the running writer task
+    private boolean writeScheduled = false;
+    private boolean overflowed = false;
+
+    public SocketConnection(Socket socket, Executor writers) throws IOException {
+        this.socket = socket;
+        this.in = new BufferedInputStream(socket.getInputStream(), 512);
+        this.out = socket.getOutputStream();
+        this.writers = writers;
+    }
+
+    public InputStream input() {
+        return in;
+    }
+
+    @Override
+    public OutputBuffer output() {
+        return output;
+    }
+
+    @Override
+    public void flush() {
+        boolean schedule = false;
+        boolean drop = false;
+        synchronized (output) {
+            if (overflowed) {
+                return;
+            }
+            ServerMetrics.outboundQueueBytes.record(output.size());
+            if (output.size() > MAX_PENDING_BYTES) {
+                overflowed = true;
+                output.clear();
+                drop = true;
+            } else {
+                schedule = !writeScheduled && output.size() > 0;
+                writeScheduled |= schedule;
+            }
+        }
+        if (drop) {
+            // Closing wakes the reading thread, which ends the match normally
+            System.out.println("Dropping slow client " + socket.getInetAddress());
+            ServerMetrics.slowClientsDropped.increment();
+            close();
+        } else if (schedule) {
+            writers.execute(this::writeOut);
+        }
+    }
+
+    // Drains everything buffered so far, including bytes added while writing
+    private void writeOut() {
+        try {
+            while (true) {
+                int length;
+                synchronized (output) {
+                    length = output.size();
+                    if (length == 0) {
+                        writeScheduled = false;
+                        return;
+                    }
+                    if (pending.length < length) {
+                        pending = new byte[Math.max(length, pending.length * 2)];
+                    }
+                    System.arraycopy(output.array(), 0, pending, 0, length);
+                    output.clear();
+                }
+                out.write(pending, 0, length);
+            }
+        } catch (IOException e) {
+            synchronized (output) {
+                writeScheduled = false;
+            }
+            // The reading thread sees the closed socket and cleans up
+            close();
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            System.out.println("Error closing socket: " + e.getMessage());
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,649 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+// Position analysis for N x N boards with K in a row. Alpha-beta negamax
+// with iterative deepening under a time budget, parallelised with
+// young-brothers-wait: at nodes with enough depth left the first move is
+// searched alone, then its siblings are searched in parallel on a
+// ForkJoinPool with the bound it produced. All threads share one lock-free
+// transposition table keyed by Zobrist hash.
+//
+//   java Solver --board=15 --win=5 --time=2000 7,7 7,8
+public class Solver {
+    private static final int WIN = 1_000_000;
+    private static final int WIN_BOUND = WIN - 10_000; // Beyond this a score is a forced result
+    private static final int INFINITY = WIN + 1;
+    private static final int SPLIT_DEPTH = 3; // Remaining depth at which siblings go parallel
+    private static final int MAX_DEPTH = 64;
+    private static final byte EMPTY = 0;
+    private static final byte X = 1;
+    private static final byte O = 2;
+
+    private static final int EXACT = 0;
+    private static final int LOWER = 1;
+    private static final int UPPER = 2;
+    private static final long MISS = -1;
+
+    private static final int[] DIRECTION_ROW = {0, 1, 1, 1};
+    private static final int[] DIRECTION_COL = {1, 0, 1, -1};
+
+    private final int size;
+    private final int winLength;
+    private final int cells;
+    private final int radius; // Candidate moves are empty cells this close to a stone
+    private final ForkJoinPool pool;
+    private final long[] zobrist;
+    private final int[][] windows; // Every K-cell line on the board
+    private final int[] weights;
+    // Two slots per entry: hash ^ data, then data. A torn write fails the
+    // xor check on read, so no locking is needed.
+    private final AtomicLongArray table;
+    private final int tableMask;
+
+    public Solver(int size, int winLength) {
+        this(size, winLength, Runtime.getRuntime().availableProcessors(), 20);
+    }
+
+    public Solver(int size, int winLength, int threads, int tableBits) {
+        if (size < 1 || winLength < 1 || winLength > size || size > 128) {
+            throw new IllegalArgumentException("Invalid board " + size + "x" + size + " with win length " + winLength);
+        }
+        this.size = size;
+        this.winLength = winLength;
+        this.cells = size * size;
+        this.radius = size <= 7 ? 2 : 1;
+        this.pool = new ForkJoinPool(threads);
+        this.table = new AtomicLongArray(2 << tableBits);
+        this.tableMask = (1 << tableBits) - 1;
+
+        SplittableRandom random = new SplittableRandom(0x7AC7AC70EL);
+        zobrist = new long[cells * 2];
+        for (int i = 0; i < zobrist.length; i++) {
+            zobrist[i] = random.nextLong();
+        }
+
+        List<int[]> lines = new ArrayList<>();
+        for (int d = 0; d < 4; d++) {
+            for (int row = 0; row < size; row++) {
+                for (int col = 0; col < size; col++) {
+                    int endRow = row + DIRECTION_ROW[d] * (winLength - 1);
+                    int endCol = col + DIRECTION_COL[d] * (winLength - 1);
+                    if (endRow < 0 || endRow >= size || endCol < 0 || endCol >= size) {
+                        continue;
+                    }
+                    int[] window = new int[winLength];
+                    for (int i = 0; i < winLength; i++) {
+                        window[i] = (row + DIRECTION_ROW[d] * i) * size + col + DIRECTION_COL[d] * i;
+                    }
+                    lines.add(window);
+                }
+            }
+        }
+        windows = lines.toArray(new int[0][]);
+
+        // A window holding c stones of one side only is worth 4^c
+        weights = new int[winLength + 1];
+        for (int c = 1; c <= winLength; c++) {
+            weights[c] = (int) Math.min(1L << (2 * c), 1 << 20);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int winLength() {
+        return winLength;
+    }
+
+    // Outcome of one analysis. cell is -1 when there is nothing to play.
+    public static final class Result {
+        public final int cell;
+        public final int score;
+        public final int depth;
+        public final long nodes;
+        public final long nanos;
+
+        Result(int cell, int score, int depth, long nodes, long nanos) {
+            this.cell = cell;
+            this.score = score;
+            this.depth = depth;
+            this.nodes = nodes;
+            this.nanos = nanos;
+        }
+
+        public long nodesPerSecond() {
+            return nanos == 0 ? 0 : nodes * 1_000_000_000L / nanos;
+        }
+
+        public boolean isForcedWin() {
+            return score > WIN_BOUND;
+        }
+
+        public boolean isForcedLoss() {
+            return score < -WIN_BOUND;
+        }
+    }
+
+    // Copies the board on the calling thread and searches it on the pool
+    public CompletableFuture<Result> analyzeAsync(Board board, char toMove, long budgetMillis) {
+        Position position = snapshot(board);
+        byte side = toMove == 'X' ? X : O;
+        return CompletableFuture.supplyAsync(() -> deepen(position, side, budgetMillis, null), pool);
+    }
+
+    public Result analyze(Board board, char toMove, long budgetMillis, Consumer<Result> onIteration) {
+        Position position = snapshot(board);
+        byte side = toMove == 'X' ? X : O;
+        return pool.invoke(new AnalysisTask(position, side, budgetMillis, onIteration));
+    }
+
+    private Position snapshot(Board board) {
+        if (board.size() != size || board.winLength() != winLength) {
+            throw new IllegalArgumentException("Solver is for " + size + "x" + size + " boards with win length " + winLength);
+        }
+        Position position = new Position();
+        for (int row = 0; row < size; row++) {
+            for (int col = 0; col < size; col++) {
+                char mark = board.get(row, col);
+                if (mark != ' ') {
+                    position.place(row * size + col, mark == 'X' ? X : O);
+                }
+            }
+        }
+        return position;
+    }
+
+    // Runs deepen() inside the pool so the search can fork
+    @SuppressWarnings("serial") // Fork/join tasks are never serialized
+    private final class AnalysisTask extends RecursiveTask<Result> {
+        private final Position position;
+        private final byte side;
+        private final long budgetMillis;
+        private final Consumer<Result> onIteration;
+
+        AnalysisTask(Position position, byte side, long budgetMillis, Consumer<Result> onIteration) {
+            this.position = position;
+            this.side = side;
+            this.budgetMillis = budgetMillis;
+            this.onIteration = onIteration;
+        }
+
+        @Override
+        protected Result compute() {
+            return deepen(position, side, budgetMillis, onIteration);
+        }
+    }
+
+    private Result deepen(Position position, byte side, long budgetMillis, Consumer<Result> onIteration) {
+        long start = System.nanoTime();
+        Search search = new Search(start + budgetMillis * 1_000_000L);
+        int[] moves = candidates(position, -1, side);
+        if (moves.length == 0) {
+            return new Result(-1, 0, 0, 0, 0);
+        }
+
+        // Fallback if not even depth 1 finishes: the best-ordered move
+        Result best = new Result(moves[0], 0, 0, 0, System.nanoTime() - start);
+        int maxDepth = Math.min(MAX_DEPTH, cells - position.filled);
+        for (int depth = 1; depth <= maxDepth; depth++) {
+            int[] root = searchRoot(search, position, depth, side, best.cell);
+            if (root == null) {
+                break; // Out of time; keep the last completed iteration
+            }
+            best = new Result(root[1], root[0], depth, search.nodes.sum(), System.nanoTime() - start);
+            if (onIteration != null) {
+                onIteration.accept(best);
+            }
+            if (best.isForcedWin() || best.isForcedLoss()) {
+                break; // Deeper search cannot change a proven result
+            }
+        }
+        ServerMetrics.solverSearches.increment();
+        ServerMetrics.solverNodes.add(search.nodes.sum());
+        ServerMetrics.solverNanos.add(System.nanoTime() - start);
+        return new Result(best.cell, best.score, best.depth, search.nodes.sum(), System.nanoTime() - start);
+    }
+
+    // Returns {score, cell}, or null if the iteration ran out of time
+    private int[] searchRoot(Search search, Position position, int depth, byte side, int firstMove) {
+        int[] moves = candidates(position, firstMove, side);
+        int alpha = child(search, position, moves[0], depth, -INFINITY, INFINITY, 0, side, null);
+        int bestCell = moves[0];
+        if (search.stopped) {
+            return null;
+        }
+        if (moves.length > 1) {
+            Split split = new Split(null, alpha, bestCell, INFINITY);
+            searchSiblings(search, position, moves, depth, 0, side, split);
+            if (search.stopped) {
+                return null;
+            }
+            alpha = split.alpha;
+            bestCell = split.bestCell;
+        }
+        return new int[]{alpha, bestCell};
+    }
+
+    // Fail-hard negamax: the result is clamped to [alpha, beta]
+    private int search(Search search, Position position, int depth, int alpha, int beta, int ply, byte side, Split split) {
+        search.nodes.increment();
+        if (search.aborted(split)) {
+            return 0;
+        }
+
+        int ttMove = -1;
+        long entry = probe(position.hash);
+        if (entry != MISS) {
+            ttMove = entryMove(entry);
+            if (entryDepth(entry) >= depth) {
+                int score = fromTable(entryScore(entry), ply);
+                int flag = entryFlag(entry);
+                if (flag == EXACT) {
+                    return Math.max(alpha, Math.min(beta, score));
+                }
+                if (flag == LOWER && score >= beta) {
+                    return beta;
+                }
+                if (flag == UPPER && score <= alpha) {
+                    return alpha;
+                }
+            }
+        }
+
+        if (depth == 0) {
+            return Math.max(alpha, Math.min(beta, evaluate(position, side)));
+        }
+
+        int[] moves = candidates(position, ttMove, side);
+        if (moves.length == 0) {
+            return Math.max(alpha, Math.min(beta, 0)); // Board full
+        }
+
+        int originalAlpha = alpha;
+        int bestCell = moves[0];
+        for (int i = 0; i < moves.length; i++) {
+            if (i == 1 && depth >= SPLIT_DEPTH && moves.length > 2) {
+                // Young brothers wait: the eldest has set the bound, the rest go parallel
+                Split siblings = new Split(split, alpha, bestCell, beta);
+                searchSiblings(search, position, moves, depth, ply, side, siblings);
+                if (search.aborted(split)) {
+                    return 0;
+                }
+                alpha = siblings.alpha;
+                bestCell = siblings.bestCell;
+                break;
+            }
+            int score = child(search, position, moves[i], depth, alpha, beta, ply, side, split);
+            if (search.aborted(split)) {
+                return 0; // Partial results must not reach the table
+            }
+            if (score > alpha) {
+                alpha = score;
+                bestCell = moves[i];
+                if (alpha >= beta) {
+                    break;
+                }
+            }
+        }
+
+        if (alpha >= beta) {
+            store(position.hash, depth, toTable(beta, ply), LOWER, bestCell);
+            return beta;
+        }
+        store(position.hash, depth, toTable(alpha, ply), alpha > originalAlpha ? EXACT : UPPER, bestCell);
+        return alpha;
+    }
+
+    private int child(Search search, Position position, int cell, int depth, int alpha, int beta, int ply, byte side, Split split) {
+        position.place(cell, side);
+        int score;
+        if (position.wins(cell, side)) {
+            score = WIN - ply - 1; // Sooner wins score higher
+        } else if (position.filled == cells) {
+            score = 0;
+        } else {
+            score = -search(search, position, depth - 1, -beta, -alpha, ply + 1, other(side), split);
+        }
+        position.remove(cell, side);
+        return score;
+    }
+
+    // Searches moves[1..] in parallel, each on its own copy of the position
+    private void searchSiblings(Search search, Position position, int[] moves, int depth, int ply, byte side, Split split) {
+        List<SiblingTask> tasks = new ArrayList<>(moves.length - 1);
+        for (int i = 1; i < moves.length; i++) {
+            tasks.add(new SiblingTask(search, position.copy(), moves[i], depth, ply, side, split));
+        }
+        RecursiveAction.invokeAll(tasks);
+    }
+
+    @SuppressWarnings("serial") // Fork/join tasks are never serialized
+    private final class SiblingTask extends RecursiveAction {
+        private final Search search;
+        private final Position position;
+        private final int cell;
+        private final int depth;
+        private final int ply;
+        private final byte side;
+        private final Split split;
+
+        SiblingTask(Search search, Position position, int cell, int depth, int ply, byte side, Split split) {
+            this.search = search;
+            this.position = position;
+            this.cell = cell;
+            this.depth = depth;
+            this.ply = ply;
+            this.side = side;
+            this.split = split;
+        }
+
+        @Override
+        protected void compute() {
+            if (search.aborted(split)) {
+                return;
+            }
+            // Siblings that finished earlier may have raised alpha already
+            int alpha = split.alpha;
+            int score = child(search, position, cell, depth, alpha, split.beta, ply, side, split);
+            if (!search.aborted(split)) {
+                split.offer(score, cell);
+            }
+        }
+    }
+
+    // Shared bound of one parallel split point. A cutoff here aborts every
+    // search below it; ancestors are checked through parent.
+    private static final class Split {
+        final Split parent;
+        final int beta;
+        volatile int alpha;
+        volatile int bestCell;
+        volatile boolean cutoff = false;
+
+        Split(Split parent, int alpha, int bestCell, int beta) {
+            this.parent = parent;
+            this.alpha = alpha;
+            this.bestCell = bestCell;
+            this.beta = beta;
+        }
+
+        synchronized void offer(int score, int cell) {
+            if (score > alpha) {
+                alpha = score;
+                bestCell = cell;
+                if (score >= beta) {
+                    cutoff = true;
+                }
+            }
+        }
+    }
+
+    private static final class Search {
+        final long deadline;
+        final LongAdder nodes = new LongAdder();
+        volatile boolean stopped = false;
+
+        Search(long deadline) {
+            this.deadline = deadline;
+        }
+
+        boolean aborted(Split split) {
+            if (stopped) {
+                return true;
+            }
+            if (System.nanoTime() > deadline) {
+                stopped = true;
+                return true;
+            }
+            for (Split s = split; s != null; s = s.parent) {
+                if (s.cutoff) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    // Legal moves near existing stones, best-looking first: the table move,
+    // then wins, then blocks, then moves that extend the longest lines
+    private int[] candidates(Position position, int firstMove, byte side) {
+        if (position.filled == 0) {
+            return new int[]{(size / 2) * size + size / 2};
+        }
+        byte opponent = other(side);
+        int[] moves = new int[cells];
+        int[] priority = new int[cells];
+        int count = 0;
+        for (int cell = 0; cell < cells; cell++) {
+            if (position.cells[cell] != EMPTY || !position.hasNeighbour(cell, radius)) {
+                continue;
+            }
+            int own = position.longestLine(cell, side);
+            int theirs = position.longestLine(cell, opponent);
+            int p;
+            if (cell == firstMove) {
+                p = Integer.MAX_VALUE;
+            } else if (own >= winLength) {
+                p = 1_000_000;
+            } else if (theirs >= winLength) {
+                p = 500_000;
+            } else {
+                p = own * 20 + theirs * 18;
+            }
+            // Insertion sort; candidate lists are short
+            int i = count++;
+            while (i > 0 && priority[i - 1] < p) {
+                moves[i] = moves[i - 1];
+                priority[i] = priority[i - 1];
+                i--;
+            }
+            moves[i] = cell;
+            priority[i] = p;
+        }
+        if (count == 0 && position.filled < cells) {
+            // Every stone is boxed in; fall back to any empty cell
+            for (int cell = 0; cell < cells; cell++) {
+                if (position.cells[cell] == EMPTY) {
+                    moves[count++] = cell;
+                }
+            }
+        }
+        int[] result = new int[count];
+        System.arraycopy(moves, 0, result, 0, count);
+        return result;
+    }
+
+    // Static score for side to move: open lines for side minus open lines for the opponent
+    private int evaluate(Position position, byte side) {
+        long score = 0;
+        byte[] board = position.cells;
+        for (int[] window : windows) {
+            int x = 0;
+            int o = 0;
+            for (int cell : window) {
+                byte value = board[cell];
+                if (value == X) {
+                    x++;
+                } else if (value == O) {
+                    o++;
+                }
+            }
+            if (o == 0) {
+                score += weights[x];
+            } else if (x == 0) {
+                score -= weights[o];
+            }
+        }
+        if (side == O) {
+            score = -score;
+        }
+        return (int) Math.max(-WIN_BOUND + 1, Math.min(WIN_BOUND - 1, score));
+    }
+
+    // Forced results are stored relative to the node, not the root
+    private static int toTable(int score, int ply) {
+        return score > WIN_BOUND ? score + ply : score < -WIN_BOUND ? score - ply : score;
+    }
+
+    private static int fromTable(int score, int ply) {
+        return score > WIN_BOUND ? score - ply : score < -WIN_BOUND ? score + ply : score;
+    }
+
+    private long probe(long hash) {
+        int index = (int) (hash & tableMask) * 2;
+        long data = table.getOpaque(index + 1);
+        long key = table.getOpaque(index);
+        return (key ^ data) == hash ? data : MISS;
+    }
+
+    private void store(long hash, int depth, int score, int flag, int cell) {
+        long data = (score & 0xFFFFFFFFL) | ((long) depth << 32) | ((long) flag << 40) | ((long) (cell + 1) << 42);
+        int index = (int) (hash & tableMask) * 2;
+        table.setOpaque(index, hash ^ data);
+        table.setOpaque(index + 1, data);
+    }
+
+    private static int entryScore(long data) {
+        return (int) data;
+    }
+
+    private static int entryDepth(long data) {
+        return (int) (data >>> 32) & 0xFF;
+    }
+
+    private static int entryFlag(long data) {
+        return (int) (data >>> 40) & 0x3;
+    }
+
+    private static int entryMove(long data) {
+        return (int) (data >>> 42) - 1;
+    }
+
+    private static byte other(byte side) {
+        return side == X ? O : X;
+    }
+
+    // Mutable board used by one search thread at a time
+    private final class Position {
+        final byte[] cells;
+        long hash = 0;
+        int filled = 0;
+
+        Position() {
+            this.cells = new byte[Solver.this.cells];
+        }
+
+        Position copy() {
+            Position copy = new Position();
+            System.arraycopy(cells, 0, copy.cells, 0, cells.length);
+            copy.hash = hash;
+            copy.filled = filled;
+            return copy;
+        }
+
+        void place(int cell, byte side) {
+            cells[cell] = side;
+            hash ^= zobrist[cell * 2 + side - 1];
+            filled++;
+        }
+
+        void remove(int cell, byte side) {
+            cells[cell] = EMPTY;
+            hash ^= zobrist[cell * 2 + side - 1];
+            filled--;
+        }
+
+        boolean wins(int cell, byte side) {
+            return longestLine(cell, side) >= winLength;
+        }
+
+        // Longest line through cell if side held it
+        int longestLine(int cell, byte side) {
+            int row = cell / size;
+            int col = cell % size;
+            int longest = 0;
+            for (int d = 0; d < 4; d++) {
+                int length = 1
+                        + countFrom(row, col, DIRECTION_ROW[d], DIRECTION_COL[d], side)
+                        + countFrom(row, col, -DIRECTION_ROW[d], -DIRECTION_COL[d], side);
+                longest = Math.max(longest, length);
+            }
+            return longest;
+        }
+
+        private int countFrom(int row, int col, int dRow, int dCol, byte side) {
+            int count = 0;
+            int r = row + dRow;
+            int c = col + dCol;
+            while (count < winLength - 1 && r >= 0 && r < size && c >= 0 && c < size && cells[r * size + c] == side) {
+                count++;
+                r += dRow;
+                c += dCol;
+            }
+            return count;
+        }
+
+        boolean hasNeighbour(int cell, int distance) {
+            int row = cell / size;
+            int col = cell % size;
+            for (int r = Math.max(0, row - distance); r <= Math.min(size - 1, row + distance); r++) {
+                for (int c = Math.max(0, col - distance); c <= Math.min(size - 1, col + distance); c++) {
+                    if (cells[r * size + c] != EMPTY) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+    }
+
+    public static void main(String[] args) {
+        int size = 15;
+        int winLength = 5;
+        int millis = 2000;
+        int threads = Runtime.getRuntime().availableProcessors();
+        List<String> moves = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.startsWith("--board=")) {
+                size = Integer.parseInt(arg.substring("--board=".length()));
+            } else if (arg.startsWith("--win=")) {
+                winLength = Integer.parseInt(arg.substring("--win=".length()));
+            } else if (arg.startsWith("--time=")) {
+                millis = Integer.parseInt(arg.substring("--time=".length()));
+            } else if (arg.startsWith("--threads=")) {
+                threads = Integer.parseInt(arg.substring("--threads=".length()));
+            } else {
+                moves.add(arg);
+            }
+        }
+
+        // Remaining arguments are "row,col" moves, X first
+        Board board = Board.create(size, winLength);
+        char mark = 'X';
+        for (String move : moves) {
+            int comma = move.indexOf(',');
+            board.place(Integer.parseInt(move.substring(0, comma)), Integer.parseInt(move.substring(comma + 1)), mark);
+            mark = mark == 'X' ? 'O' : 'X';
+        }
+
+        Solver solver = new Solver(size, winLength, threads, 22);
+        System.out.println("Analysing " + size + "x" + size + " (" + winLength + " in a row) for " + mark
+                + " on " + threads + " threads, " + millis + " ms");
+        final int boardSize = size;
+        Result result = solver.analyze(board, mark, millis, r ->
+                System.out.printf("depth %2d  score %8d  move %d,%d  nodes %,d  %,d nodes/s%n",
+                        r.depth, r.score, r.cell / boardSize, r.cell % boardSize, r.nodes, r.nodesPerSecond()));
+        System.out.printf("best %d,%d  score %d  depth %d  %,d nodes in %d ms (%,d nodes/s)%n",
+                result.cell / size, result.cell % size, result.score, result.depth, result.nodes,
+                result.nanos / 1_000_000, result.nodesPerSecond());
+    }
+}
\ No newline at end of file
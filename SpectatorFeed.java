@@ -0,0 +1,298 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Everything spectators of one match see. The session only posts events
+// here (O(1), whatever the audience); a fan-out thread applies them to its
+// own copy of the board, encodes each batch once per protocol and appends
+// those same bytes to every watcher. The players' move handling therefore
+// never waits on, or scales with, the number of watchers.
+//
+// A watcher whose connection is more than WATCHER_BACKLOG_BYTES behind is
+// skipped instead of buffered. Once it has caught up it gets one STATE
+// snapshot in place of everything it missed.
+public class SpectatorFeed {
+    public static final int WATCHER_BACKLOG_BYTES = 16 * 1024;
+
+    private final long matchId;
+    private final Executor fanOut;
+    private final ConcurrentLinkedQueue<Runnable> mailbox = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+    // Only touched by the fan-out task currently draining the mailbox
+    private final ArrayList<Watcher> watchers = new ArrayList<>();
+    private final int boardSize;
+    private final int winLength;
+    private final byte[] cells; // 'X', 'O' or 0 per cell, row by row
+    private char turn; // Mark to move, or '-' once the game is over
+    private char resultMark; // Winning mark, 'D' or '-' once the game is over
+    private String result; // GAME_OVER text once the game is over
+    private boolean closed = false;
+    // This drain's frames, encoded once for each protocol
+    private final OutputBuffer textBatch = new OutputBuffer(256);
+    private final OutputBuffer binaryBatch = new OutputBuffer(256);
+    // Encoded snapshots, rebuilt only after the state has changed
+    private byte[] textSnapshot;
+    private byte[] binarySnapshot;
+
+    // Starts from the match as it is now; called on the session's thread
+    public SpectatorFeed(long matchId, Board board, char turn, char resultMark, String result, Executor fanOut) {
+        this.matchId = matchId;
+        this.fanOut = fanOut;
+        this.boardSize = board.size();
+        this.winLength = board.winLength();
+        this.cells = new byte[boardSize * boardSize];
+        for (int row = 0; row < boardSize; row++) {
+            for (int col = 0; col < boardSize; col++) {
+                char c = board.get(row, col);
+                if (c == 'X' || c == 'O') {
+                    cells[row * boardSize + col] = (byte) c;
+                }
+            }
+        }
+        this.turn = turn;
+        this.resultMark = resultMark;
+        this.result = result;
+    }
+
+    // Events from the session, in the order they happened
+
+    public void join(PlayerHandler watcher) {
+        post(() -> onJoin(watcher));
+    }
+
+    public void leave(PlayerHandler watcher) {
+        post(() -> onLeave(watcher));
+    }
+
+    public void move(char mark, int cell, char nextTurn) {
+        post(() -> onMove(mark, cell, nextTurn));
+    }
+
+    public void gameOver(char result, String text) {
+        post(() -> onGameOver(result, text));
+    }
+
+    public void reset() {
+        post(this::onReset);
+    }
+
+    public void chat(String text) {
+        post(() -> onChat(text));
+    }
+
+    // Match is gone; watchers are told and let go
+    public void close(String text) {
+        post(() -> onClose(text));
+    }
+
+    private void post(Runnable event) {
+        mailbox.add(event);
+        if (scheduled.compareAndSet(false, true)) {
+            fanOut.execute(this::drain);
+        }
+    }
+
+    private void drain() {
+        while (true) {
+            Runnable next;
+            while ((next = mailbox.poll()) != null) {
+                try {
+                    next.run();
+                } catch (RuntimeException e) {
+                    System.err.println("Error in spectator feed " + matchId + ": " + e);
+                }
+            }
+            deliver();
+            scheduled.set(false);
+            // Same re-check as GameSession: an event posted while we were
+            // finishing would otherwise wait for the next one
+            if (mailbox.isEmpty() || !scheduled.compareAndSet(false, true)) {
+                return;
+            }
+        }
+    }
+
+    private void onJoin(PlayerHandler handler) {
+        if (closed) {
+            handler.stopWatching(this);
+            return;
+        }
+        // Frames already batched describe moves the snapshot includes
+        deliver();
+        Watcher watcher = new Watcher(handler);
+        watcher.index = watchers.size();
+        watchers.add(watcher);
+        handler.setWatcher(watcher);
+        watcher.sendSnapshot();
+        handler.flushBulk();
+        ServerMetrics.spectatorsJoined.increment();
+    }
+
+    private void onLeave(PlayerHandler handler) {
+        Watcher watcher = handler.getWatcher();
+        if (watcher == null || watcher.index < 0 || watcher.index >= watchers.size()
+                || watchers.get(watcher.index) != watcher) {
+            return;
+        }
+        // Swap with the last one so removal stays O(1)
+        Watcher last = watchers.remove(watchers.size() - 1);
+        if (last != watcher) {
+            last.index = watcher.index;
+            watchers.set(watcher.index, last);
+        }
+        watcher.index = -1;
+        ServerMetrics.spectatorsLeft.increment();
+    }
+
+    private void onMove(char mark, int cell, char nextTurn) {
+        cells[cell] = (byte) mark;
+        turn = nextTurn;
+        changed();
+
+        BinaryProtocol.writeFrame(binaryBatch, BinaryProtocol.MOVE, mark, cell, (int) matchId);
+        textBatch.writeAscii("Move ");
+        textBatch.writeByte(mark);
+        textBatch.writeByte(' ');
+        textBatch.writeDecimal(cell / boardSize);
+        textBatch.writeByte(',');
+        textBatch.writeDecimal(cell % boardSize);
+        textBatch.writeByte('\n');
+    }
+
+    private void onGameOver(char mark, String text) {
+        turn = '-';
+        resultMark = mark;
+        result = text;
+        changed();
+        writeGameOver(binaryBatch, textBatch, mark, text);
+    }
+
+    private void onReset() {
+        Arrays.fill(cells, (byte) 0);
+        turn = 'X';
+        resultMark = ' ';
+        result = null;
+        changed();
+        BinaryProtocol.writeFrame(binaryBatch, BinaryProtocol.RESET, 0, 0, (int) matchId);
+        textBatch.writeAscii("RESET_GAME\n");
+    }
+
+    private void onChat(String text) {
+        BinaryProtocol.writeTextFrame(binaryBatch, BinaryProtocol.CHAT, 0, (int) matchId, text);
+        textBatch.writeAscii("Chat ");
+        textBatch.writeUtf8(text);
+        textBatch.writeByte('\n');
+    }
+
+    private void onClose(String text) {
+        if (closed) {
+            return;
+        }
+        onGameOver('-', text);
+        deliver();
+        closed = true;
+        for (Watcher watcher : watchers) {
+            watcher.index = -1;
+            watcher.handler.stopWatching(this);
+        }
+        ServerMetrics.spectatorsLeft.add(watchers.size());
+        watchers.clear();
+    }
+
+    private void writeGameOver(OutputBuffer binary, OutputBuffer text, char mark, String message) {
+        BinaryProtocol.writeTextFrame(binary, BinaryProtocol.GAME_OVER, mark, (int) matchId, message);
+        text.writeAscii("GAME_OVER ");
+        text.writeUtf8(message);
+        text.writeByte('\n');
+    }
+
+    private void changed() {
+        textSnapshot = null;
+        binarySnapshot = null;
+    }
+
+    // Hands this drain's frames to every watcher, one flush each
+    private void deliver() {
+        if (textBatch.size() == 0 && binaryBatch.size() == 0) {
+            return;
+        }
+        for (Watcher watcher : watchers) {
+            watcher.send(watcher.handler.isBinary() ? binaryBatch : textBatch);
+        }
+        textBatch.clear();
+        binaryBatch.clear();
+    }
+
+    private byte[] snapshot(boolean binary) {
+        if (binary ? binarySnapshot == null : textSnapshot == null) {
+            OutputBuffer binaryOut = new OutputBuffer(64 + cells.length);
+            OutputBuffer textOut = new OutputBuffer(64 + cells.length);
+            StringBuilder board = new StringBuilder(cells.length);
+            for (byte cell : cells) {
+                board.append(cell == 0 ? '.' : (char) cell);
+            }
+            BinaryProtocol.writeFrame(binaryOut, BinaryProtocol.BOARD, winLength, boardSize, (int) matchId);
+            BinaryProtocol.writeTextFrame(binaryOut, BinaryProtocol.STATE, turn, (int) matchId, board.toString());
+            textOut.writeAscii("BOARD ");
+            textOut.writeDecimal(boardSize);
+            textOut.writeByte(' ');
+            textOut.writeDecimal(winLength);
+            textOut.writeAscii("\nSTATE ");
+            textOut.writeAscii(board.toString());
+            textOut.writeByte(' ');
+            textOut.writeByte(turn);
+            textOut.writeByte('\n');
+            if (result != null) {
+                writeGameOver(binaryOut, textOut, resultMark, result);
+            }
+            binarySnapshot = Arrays.copyOf(binaryOut.array(), binaryOut.size());
+            textSnapshot = Arrays.copyOf(textOut.array(), textOut.size());
+        }
+        return binary ? binarySnapshot : textSnapshot;
+    }
+
+    // One spectator's connection, as seen from the fan-out thread
+    public final class Watcher {
+        private final PlayerHandler handler;
+        private int index = -1; // Position in watchers, -1 once removed
+        private boolean behind = false; // Skipped frames; owes a snapshot
+
+        private Watcher(PlayerHandler handler) {
+            this.handler = handler;
+        }
+
+        private void send(OutputBuffer frames) {
+            OutputBuffer out = handler.output();
+            synchronized (out) {
+                if (out.size() > WATCHER_BACKLOG_BYTES) {
+                    if (!behind) {
+                        behind = true;
+                        ServerMetrics.spectatorsBehind.increment();
+                    }
+                    return;
+                }
+                if (behind) {
+                    // frames were applied to the state already, so the
+                    // snapshot covers them too
+                    behind = false;
+                    byte[] snapshot = snapshot(handler.isBinary());
+                    out.write(snapshot, 0, snapshot.length);
+                } else {
+                    out.write(frames.array(), 0, frames.size());
+                }
+            }
+            handler.flushBulk();
+        }
+
+        private void sendSnapshot() {
+            byte[] snapshot = snapshot(handler.isBinary());
+            OutputBuffer out = handler.output();
+            synchronized (out) {
+                out.write(snapshot, 0, snapshot.length);
+            }
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,188 @@
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.LongAdder;
+
+// Hashed timer wheel: one thread and a ring of buckets, each holding the
+// timeouts that fall due in that slot on some turn of the ring. Scheduling
+// and cancelling are O(1) from any thread (a queue append); each tick only
+// walks the one bucket under the hand, so a million idle deadlines cost
+// nothing until they come round. Deadlines are rounded up to the next tick,
+// which is fine for timeouts measured in seconds.
+//
+// Tasks run on the wheel thread and must be short; sessions submit into
+// their own mailbox from here, as they did from the old scheduler.
+public class TimerWheel {
+    private static final int TRANSFERS_PER_TICK = 100_000; // Bounds one tick's work under a burst of schedules
+
+    private final long tickNanos;
+    private final Bucket[] wheel;
+    private final int mask;
+    private final long startedAt = System.nanoTime();
+    private final ConcurrentLinkedQueue<Timeout> added = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<Timeout> cancelled = new ConcurrentLinkedQueue<>();
+    private final LongAdder pending = new LongAdder();
+    private final Thread worker;
+    private long tick = 0; // Worker thread only
+
+    // wheelSize is rounded up to a power of two
+    public TimerWheel(String name, long tickMillis, int wheelSize) {
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, tickMillis));
+        int size = Integer.highestOneBit(Math.max(2, wheelSize) * 2 - 1);
+        this.wheel = new Bucket[size];
+        for (int i = 0; i < size; i++) {
+            wheel[i] = new Bucket();
+        }
+        this.mask = size - 1;
+        this.worker = new Thread(this::run, name);
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    // Runs task on the wheel thread after delayMillis
+    public Timeout schedule(Runnable task, long delayMillis) {
+        Timeout timeout = new Timeout(task, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Math.max(0, delayMillis)));
+        pending.increment();
+        added.add(timeout);
+        return timeout;
+    }
+
+    // Timeouts scheduled and neither run nor cancelled yet
+    public long pending() {
+        return pending.sum();
+    }
+
+    private void run() {
+        while (true) {
+            long sleep = startedAt + (tick + 1) * tickNanos - System.nanoTime();
+            if (sleep > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(sleep);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+            unlinkCancelled();
+            transferAdded();
+            wheel[(int) (tick & mask)].expire();
+            tick++;
+        }
+    }
+
+    private void transferAdded() {
+        Timeout timeout;
+        for (int i = 0; i < TRANSFERS_PER_TICK && (timeout = added.poll()) != null; i++) {
+            if (timeout.state != Timeout.PENDING) {
+                continue; // Cancelled before it reached the wheel
+            }
+            // Bucket n is expired at the end of tick n, so the earliest tick
+            // that ends at or after the deadline; never behind the hand
+            long due = Math.max(tick, (timeout.deadline - startedAt + tickNanos - 1) / tickNanos - 1);
+            timeout.rounds = (due - tick) / wheel.length;
+            wheel[(int) (due & mask)].add(timeout);
+        }
+    }
+
+    private void unlinkCancelled() {
+        Timeout timeout;
+        while ((timeout = cancelled.poll()) != null) {
+            if (timeout.bucket != null) {
+                timeout.bucket.remove(timeout);
+            }
+        }
+    }
+
+    public final class Timeout {
+        private static final int PENDING = 0;
+        private static final int CANCELLED = 1;
+        private static final int EXPIRED = 2;
+        private static final AtomicIntegerFieldUpdater<Timeout> STATE =
+                AtomicIntegerFieldUpdater.newUpdater(Timeout.class, "state");
+
+        private final Runnable task;
+        private final long deadline; // System.nanoTime()
+        private volatile int state = PENDING;
+        // Worker thread only
+        private long rounds; // Full turns of the wheel still to wait
+        private Bucket bucket;
+        private Timeout prev;
+        private Timeout next;
+
+        private Timeout(Runnable task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        // False if the task has already run (or is running)
+        public boolean cancel() {
+            if (!STATE.compareAndSet(this, PENDING, CANCELLED)) {
+                return false;
+            }
+            pending.decrement();
+            cancelled.add(this); // The worker unlinks it so the wheel does not keep it
+            return true;
+        }
+
+        private boolean expire() {
+            if (!STATE.compareAndSet(this, PENDING, EXPIRED)) {
+                return false;
+            }
+            pending.decrement();
+            return true;
+        }
+    }
+
+    // Doubly linked so a cancelled timeout leaves its bucket in O(1)
+    private static final class Bucket {
+        private Timeout head;
+        private Timeout tail;
+
+        void add(Timeout timeout) {
+            timeout.bucket = this;
+            timeout.prev = tail;
+            timeout.next = null;
+            if (tail == null) {
+                head = timeout;
+            } else {
+                tail.next = timeout;
+            }
+            tail = timeout;
+        }
+
+        void remove(Timeout timeout) {
+            if (timeout.prev == null) {
+                head = timeout.next;
+            } else {
+                timeout.prev.next = timeout.next;
+            }
+            if (timeout.next == null) {
+                tail = timeout.prev;
+            } else {
+                timeout.next.prev = timeout.prev;
+            }
+            timeout.bucket = null;
+            timeout.prev = null;
+            timeout.next = null;
+        }
+
+        void expire() {
+            Timeout timeout = head;
+            while (timeout != null) {
+                Timeout next = timeout.next;
+                if (timeout.rounds > 0) {
+                    timeout.rounds--;
+                } else {
+                    remove(timeout);
+                    if (timeout.expire()) {
+                        try {
+                            timeout.task.run();
+                        } catch (RuntimeException e) {
+                            System.err.println("Error in timer task: " + e);
+                        }
+                    }
+                }
+                timeout = next;
+            }
+        }
+    }
+}
\ No newline at end of file
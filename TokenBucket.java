@@ -0,0 +1,25 @@
+// Allows ratePerSecond events on average, in bursts of up to burst. Not
+// thread-safe: each bucket belongs to one connection's reading thread.
+public final class TokenBucket {
+    private final double tokensPerNano;
+    private final double burst;
+    private double tokens;
+    private long lastRefill = System.nanoTime();
+
+    public TokenBucket(double ratePerSecond, int burst) {
+        this.tokensPerNano = ratePerSecond / 1e9;
+        this.burst = burst;
+        this.tokens = burst;
+    }
+
+    public boolean tryTake() {
+        long now = System.nanoTime();
+        tokens = Math.min(burst, tokens + (now - lastRefill) * tokensPerNano);
+        lastRefill = now;
+        if (tokens < 1) {
+            return false;
+        }
+        tokens -= 1;
+        return true;
+    }
+}
\ No newline at end of file
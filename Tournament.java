@@ -0,0 +1,471 @@
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Plays bot strategies against each other in-process, straight on Board
+// (the same rules GameSession applies), with no sockets or sessions. Each
+// pairing is split into chunks of games that run on a work-stealing pool,
+// so all cores stay busy even when pairings differ in length. Results are
+// printed as each pairing finishes, with a games/s line every second and
+// the standings at the end.
+//
+//   java Tournament [--players=random,first,greedy,perfect] [--format=round-robin|swiss]
+//                   [--rounds=R] [--games=N] [--board=N] [--win=K] [--threads=T] [--seed=S]
+//
+// Each pairing plays N games with colours alternating. A game is worth 1
+// point for a win and 1/2 for a draw. In Swiss, players on similar scores
+// meet, no pair meets twice while another opponent is free, and an odd
+// player out gets a bye worth N points.
+public class Tournament {
+    private static final int GAMES_PER_TASK = 256; // Games in one pool task
+    // Row/column steps for horizontal, vertical and both diagonals
+    private static final int[][] DIRECTIONS = {{0, 1}, {1, 0}, {1, 1}, {1, -1}};
+
+    // Picks a move for mark: a cell index (row * size + col) that is empty
+    interface Strategy {
+        int move(Board board, char mark, SplittableRandom random);
+    }
+
+    private final List<Player> players = new ArrayList<>();
+    private final int boardSize;
+    private final int winLength;
+    private final int gamesPerPairing;
+    private final long seed;
+    private final ExecutorService pool;
+    private final AtomicLong gamesPlayed = new AtomicLong();
+    private final AtomicLong illegalMoves = new AtomicLong();
+    private final AtomicLong nextTaskSeed = new AtomicLong();
+
+    public Tournament(int boardSize, int winLength, int gamesPerPairing, long seed, int threads) {
+        this.boardSize = boardSize;
+        this.winLength = winLength;
+        this.gamesPerPairing = gamesPerPairing;
+        this.seed = seed;
+        this.pool = Executors.newWorkStealingPool(threads);
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        String playerList = "random,first,greedy,perfect";
+        String format = "round-robin";
+        int rounds = 0; // Swiss default: enough rounds to separate the field
+        int games = 1000;
+        int size = 3;
+        int winLength = 3;
+        int threads = Runtime.getRuntime().availableProcessors();
+        long seed = 1;
+        for (String arg : args) {
+            if (arg.startsWith("--players=")) {
+                playerList = arg.substring("--players=".length());
+            } else if (arg.startsWith("--format=")) {
+                format = arg.substring("--format=".length());
+            } else if (arg.startsWith("--rounds=")) {
+                rounds = Math.max(0, intOption(arg, "--rounds=", rounds));
+            } else if (arg.startsWith("--games=")) {
+                games = Math.max(1, intOption(arg, "--games=", games));
+            } else if (arg.startsWith("--board=")) {
+                size = intOption(arg, "--board=", size);
+            } else if (arg.startsWith("--win=")) {
+                winLength = intOption(arg, "--win=", winLength);
+            } else if (arg.startsWith("--threads=")) {
+                threads = Math.max(1, intOption(arg, "--threads=", threads));
+            } else if (arg.startsWith("--seed=")) {
+                seed = longOption(arg, "--seed=", seed);
+            } else {
+                System.err.println("Unknown option " + arg);
+                System.exit(1);
+            }
+        }
+        if (size == 3 && winLength > 3) {
+            winLength = 3;
+        }
+        if (!format.equals("round-robin") && !format.equals("swiss")) {
+            System.err.println("Format must be round-robin or swiss");
+            System.exit(1);
+        }
+
+        Tournament tournament = new Tournament(size, winLength, games, seed, threads);
+        try {
+            Board.create(size, winLength);
+            for (String name : playerList.split(",")) {
+                tournament.addPlayer(name.trim());
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        }
+        if (tournament.players.size() < 2) {
+            System.err.println("A tournament needs at least two players");
+            System.exit(1);
+        }
+        System.out.println(tournament.players.size() + " players, " + format + ", " + games + " games per pairing, "
+                + size + "x" + size + " (" + winLength + " in a row), " + threads + " threads");
+        if (format.equals("swiss")) {
+            tournament.runSwiss(rounds > 0 ? rounds : 32 - Integer.numberOfLeadingZeros(tournament.players.size() - 1) + 1);
+        } else {
+            tournament.runRoundRobin();
+        }
+    }
+
+    private static int intOption(String arg, String option, int defaultValue) {
+        try {
+            return Integer.parseInt(arg.substring(option.length()));
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid option " + arg + ". Using default: " + defaultValue);
+            return defaultValue;
+        }
+    }
+
+    private static long longOption(String arg, String option, long defaultValue) {
+        try {
+            return Long.parseLong(arg.substring(option.length()));
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid option " + arg + ". Using default: " + defaultValue);
+            return defaultValue;
+        }
+    }
+
+    // Same strategy more than once is fine; later entries get "#2", "#3"...
+    public void addPlayer(String strategyName) {
+        Strategy strategy = strategy(strategyName, boardSize, winLength);
+        int copies = 0;
+        for (Player player : players) {
+            if (player.strategyName.equals(strategyName)) {
+                copies++;
+            }
+        }
+        players.add(new Player(copies == 0 ? strategyName : strategyName + "#" + (copies + 1), strategyName, strategy));
+    }
+
+    public void runRoundRobin() throws InterruptedException {
+        List<Pairing> pairings = new ArrayList<>();
+        for (int i = 0; i < players.size(); i++) {
+            for (int j = i + 1; j < players.size(); j++) {
+                pairings.add(new Pairing(1, players.get(i), players.get(j)));
+            }
+        }
+        long start = System.nanoTime();
+        playRound(pairings);
+        finish(start);
+    }
+
+    public void runSwiss(int rounds) throws InterruptedException {
+        long start = System.nanoTime();
+        for (int round = 1; round <= rounds; round++) {
+            playRound(swissPairings(round));
+        }
+        finish(start);
+    }
+
+    // Top of the table plays the next-highest opponent it has not met yet
+    private List<Pairing> swissPairings(int round) {
+        List<Player> order = new ArrayList<>(players);
+        order.sort(Comparator.comparingDouble(Player::points).reversed());
+        List<Pairing> pairings = new ArrayList<>();
+        Set<Player> paired = new HashSet<>();
+        if (order.size() % 2 == 1) {
+            // Bye for the lowest-ranked player who has not had one
+            Player bye = order.get(order.size() - 1);
+            for (int i = order.size() - 1; i >= 0; i--) {
+                if (!order.get(i).hadBye) {
+                    bye = order.get(i);
+                    break;
+                }
+            }
+            bye.hadBye = true;
+            bye.byePoints += gamesPerPairing;
+            paired.add(bye);
+            System.out.println("round " + round + ": " + bye.name + " has a bye");
+        }
+        for (Player player : order) {
+            if (paired.contains(player)) {
+                continue;
+            }
+            Player opponent = null;
+            for (Player candidate : order) {
+                if (candidate != player && !paired.contains(candidate)) {
+                    if (!player.opponents.contains(candidate)) {
+                        opponent = candidate;
+                        break;
+                    }
+                    if (opponent == null) {
+                        opponent = candidate; // Rematch only if nobody else is left
+                    }
+                }
+            }
+            if (opponent == null) {
+                break;
+            }
+            paired.add(player);
+            paired.add(opponent);
+            player.opponents.add(opponent);
+            opponent.opponents.add(player);
+            pairings.add(new Pairing(round, player, opponent));
+        }
+        return pairings;
+    }
+
+    // Runs every game of these pairings and waits for all of them,
+    // printing each pairing's result as it completes
+    private void playRound(List<Pairing> pairings) throws InterruptedException {
+        List<Future<?>> tasks = new ArrayList<>();
+        for (Pairing pairing : pairings) {
+            int chunks = (gamesPerPairing + GAMES_PER_TASK - 1) / GAMES_PER_TASK;
+            pairing.remaining.set(chunks);
+            for (int chunk = 0; chunk < chunks; chunk++) {
+                int first = chunk * GAMES_PER_TASK;
+                int count = Math.min(GAMES_PER_TASK, gamesPerPairing - first);
+                long taskSeed = seed * 0x9E3779B97F4A7C15L + nextTaskSeed.getAndIncrement();
+                tasks.add(pool.submit(() -> playChunk(pairing, first, count, taskSeed)));
+            }
+        }
+        long lastReport = System.nanoTime();
+        long lastGames = gamesPlayed.get();
+        for (Future<?> task : tasks) {
+            while (true) {
+                try {
+                    task.get(1, TimeUnit.SECONDS);
+                    break;
+                } catch (TimeoutException e) {
+                    long now = System.nanoTime();
+                    long games = gamesPlayed.get();
+                    System.out.printf("  %,d games, %,.0f games/s%n", games, (games - lastGames) * 1e9 / (now - lastReport));
+                    lastReport = now;
+                    lastGames = games;
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException("Game failed", e.getCause());
+                }
+            }
+        }
+    }
+
+    private void playChunk(Pairing pairing, int first, int count, long taskSeed) {
+        SplittableRandom random = new SplittableRandom(taskSeed);
+        Board board = Board.create(boardSize, winLength);
+        int winsA = 0;
+        int winsB = 0;
+        int draws = 0;
+        for (int game = first; game < first + count; game++) {
+            // Colours alternate so neither side always moves first
+            boolean aIsX = game % 2 == 0;
+            board.reset();
+            char result = play(board, aIsX ? pairing.a.strategy : pairing.b.strategy,
+                    aIsX ? pairing.b.strategy : pairing.a.strategy, random);
+            if (result == 'D') {
+                draws++;
+            } else if ((result == 'X') == aIsX) {
+                winsA++;
+            } else {
+                winsB++;
+            }
+        }
+        gamesPlayed.addAndGet(count);
+        pairing.record(winsA, winsB, draws);
+    }
+
+    // One game; returns the winning mark or 'D'. A strategy that picks a
+    // filled or out-of-range cell loses on the spot.
+    private char play(Board board, Strategy x, Strategy o, SplittableRandom random) {
+        int size = board.size();
+        char mark = 'X';
+        while (true) {
+            int cell = (mark == 'X' ? x : o).move(board, mark, random);
+            int row = cell / size;
+            int col = cell % size;
+            if (cell < 0 || !board.inBounds(row, col) || !board.isEmpty(row, col)) {
+                illegalMoves.incrementAndGet();
+                return mark == 'X' ? 'O' : 'X';
+            }
+            char result = board.place(row, col, mark);
+            if (result != ' ') {
+                return result;
+            }
+            mark = mark == 'X' ? 'O' : 'X';
+        }
+    }
+
+    private void finish(long start) {
+        pool.shutdown();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        long games = gamesPlayed.get();
+        System.out.printf("%,d games in %.2f s: %,.0f games/s%n", games, seconds, games / seconds);
+        if (illegalMoves.get() > 0) {
+            System.out.println(illegalMoves.get() + " games lost to an illegal move");
+        }
+        List<Player> table = new ArrayList<>(players);
+        table.sort(Comparator.comparingDouble(Player::points).reversed());
+        System.out.println();
+        System.out.printf("%-4s %-16s %10s %8s %8s %8s %7s%n", "#", "player", "points", "won", "drawn", "lost", "score");
+        for (int i = 0; i < table.size(); i++) {
+            Player player = table.get(i);
+            long played = player.wins + player.draws + player.losses;
+            System.out.printf("%-4d %-16s %10.1f %8d %8d %8d %6.1f%%%n", i + 1, player.name, player.points(),
+                    player.wins, player.draws, player.losses, played == 0 ? 0 : 100 * player.gamePoints() / played);
+        }
+    }
+
+    private static final class Player {
+        private final String name;
+        private final String strategyName;
+        private final Strategy strategy;
+        // Added to by each pairing as it completes, under Pairing.class
+        private long wins;
+        private long draws;
+        private long losses;
+        private long byePoints; // Counted in points, but not as games won or in the score
+        private boolean hadBye = false;
+        private final Set<Player> opponents = new HashSet<>();
+
+        Player(String name, String strategyName, Strategy strategy) {
+            this.name = name;
+            this.strategyName = strategyName;
+            this.strategy = strategy;
+        }
+
+        double points() {
+            return gamePoints() + byePoints;
+        }
+
+        double gamePoints() {
+            return wins + draws / 2.0;
+        }
+    }
+
+    // One meeting of a and b; chunks report in as they finish
+    private static final class Pairing {
+        private final int round;
+        private final Player a;
+        private final Player b;
+        private final AtomicInteger remaining = new AtomicInteger();
+        private int winsA;
+        private int winsB;
+        private int draws;
+
+        Pairing(int round, Player a, Player b) {
+            this.round = round;
+            this.a = a;
+            this.b = b;
+        }
+
+        void record(int chunkWinsA, int chunkWinsB, int chunkDraws) {
+            synchronized (this) {
+                winsA += chunkWinsA;
+                winsB += chunkWinsB;
+                draws += chunkDraws;
+            }
+            if (remaining.decrementAndGet() == 0) {
+                synchronized (Pairing.class) {
+                    a.wins += winsA;
+                    a.losses += winsB;
+                    a.draws += draws;
+                    b.wins += winsB;
+                    b.losses += winsA;
+                    b.draws += draws;
+                    System.out.printf("round %d: %-16s %-16s +%d =%d -%d%n", round, a.name, b.name, winsA, draws, winsB);
+                }
+            }
+        }
+    }
+
+    // Built-in strategies
+
+    static Strategy strategy(String name, int size, int winLength) {
+        switch (name) {
+            case "random":
+                return Tournament::randomMove;
+            case "first":
+                return (board, mark, random) -> firstEmpty(board);
+            case "greedy":
+                return Tournament::greedyMove;
+            case "perfect":
+                if (size != 3 || winLength != 3) {
+                    throw new IllegalArgumentException("perfect only plays 3x3");
+                }
+                return (board, mark, random) -> PerfectPlay.bestMove(((CompactBoard) board).bits());
+            default:
+                throw new IllegalArgumentException("Unknown strategy " + name + "; use random, first, greedy or perfect");
+        }
+    }
+
+    // Uniform over the empty cells
+    private static int randomMove(Board board, char mark, SplittableRandom random) {
+        int size = board.size();
+        int empty = 0;
+        for (int cell = 0; cell < size * size; cell++) {
+            if (board.isEmpty(cell / size, cell % size)) {
+                empty++;
+            }
+        }
+        if (empty == 0) {
+            return -1;
+        }
+        int pick = random.nextInt(empty);
+        for (int cell = 0; cell < size * size; cell++) {
+            if (board.isEmpty(cell / size, cell % size) && pick-- == 0) {
+                return cell;
+            }
+        }
+        return -1;
+    }
+
+    private static int firstEmpty(Board board) {
+        int size = board.size();
+        for (int cell = 0; cell < size * size; cell++) {
+            if (board.isEmpty(cell / size, cell % size)) {
+                return cell;
+            }
+        }
+        return -1;
+    }
+
+    // Wins if it can, blocks if it must, otherwise plays at random
+    private static int greedyMove(Board board, char mark, SplittableRandom random) {
+        int size = board.size();
+        char opponent = mark == 'X' ? 'O' : 'X';
+        int block = -1;
+        for (int cell = 0; cell < size * size; cell++) {
+            int row = cell / size;
+            int col = cell % size;
+            if (!board.isEmpty(row, col)) {
+                continue;
+            }
+            if (completesLine(board, row, col, mark)) {
+                return cell;
+            }
+            if (block < 0 && completesLine(board, row, col, opponent)) {
+                block = cell;
+            }
+        }
+        return block >= 0 ? block : randomMove(board, mark, random);
+    }
+
+    // Would mark at (row, col) make winLength in a row?
+    private static boolean completesLine(Board board, int row, int col, char mark) {
+        for (int[] direction : DIRECTIONS) {
+            int count = 1;
+            for (int sign = -1; sign <= 1; sign += 2) {
+                int r = row + sign * direction[0];
+                int c = col + sign * direction[1];
+                while (board.inBounds(r, c) && board.get(r, c) == mark) {
+                    count++;
+                    r += sign * direction[0];
+                    c += sign * direction[1];
+                }
+            }
+            if (count >= board.winLength()) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,50 @@
+package tictactoe;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import javax.swing.JPanel;
+import org.openjdk.jmh.annotations.*;
+
+// GameGUI's message handling over the messages of one full game: one
+// message per EDT event, as before batching, and the whole game as one
+// batch, as a burst now arrives. The components are built into a plain
+// panel, so no display is needed.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class GuiDispatchBenchmark {
+    private static final String[] GAME = {
+            "You are X", "Your turn",
+            "Move X 0,0", "Opponent's turn", "Move O 1,1", "Your turn",
+            "Move X 0,1", "Opponent's turn", "Chat Bob: hmm", "Move O 2,2", "Your turn",
+            "Move X 0,2", "GAME_OVER Alice wins!", "RESET_GAME"
+    };
+    private static final List<String> GAME_BATCH = List.of(GAME);
+
+    private GameGUI gui;
+    private int next;
+
+    // Fresh components per iteration; chat text accumulates otherwise
+    @Setup(Level.Iteration)
+    public void setUp() {
+        gui = new GameGUI(null);
+        gui.buildComponents(new JPanel());
+        next = 0;
+    }
+
+    @Benchmark
+    public void processServerMessage() {
+        gui.processServerMessage(GAME[next]);
+        next = next == GAME.length - 1 ? 0 : next + 1;
+    }
+
+    // Average per message, comparable with processServerMessage
+    @Benchmark
+    @OperationsPerInvocation(14)
+    public void processServerMessages() {
+        gui.processServerMessages(GAME_BATCH);
+    }
+}
\ No newline at end of file
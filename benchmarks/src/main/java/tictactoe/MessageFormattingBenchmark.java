@@ -0,0 +1,55 @@
+package tictactoe;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+// Outbound encoding into the connection buffer, per protocol. These are
+// expected to allocate nothing; check with -prof gc.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MessageFormattingBenchmark {
+    @Param({"text", "binary"})
+    public String protocol;
+
+    private NullConnection connection;
+    private PlayerHandler handler;
+
+    @Setup
+    public void setUp() {
+        connection = new NullConnection();
+        handler = new PlayerHandler(connection, (Lobby) null);
+        handler.setBinary(protocol.equals("binary"));
+    }
+
+    @Benchmark
+    public int sendMove() {
+        connection.output().clear();
+        handler.sendMove('X', 1, 2, 3);
+        return connection.output().size();
+    }
+
+    @Benchmark
+    public int sendTurn() {
+        connection.output().clear();
+        handler.sendTurn(true);
+        return connection.output().size();
+    }
+
+    @Benchmark
+    public int sendChat() {
+        connection.output().clear();
+        handler.sendChat("Alice: good game, one more?");
+        return connection.output().size();
+    }
+
+    @Benchmark
+    public int sendGameOver() {
+        connection.output().clear();
+        handler.sendGameOver('X', "Alice wins!");
+        return connection.output().size();
+    }
+}
\ No newline at end of file
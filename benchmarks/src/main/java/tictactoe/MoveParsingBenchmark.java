@@ -0,0 +1,29 @@
+package tictactoe;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+// Inbound "Move r,c" handling up to the point where it would reach a
+// session. The handler has no session, so only parsing and dispatch run.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MoveParsingBenchmark {
+    @Param({"Move 1,2", "Move 12,14"})
+    public String line;
+
+    private PlayerHandler handler;
+
+    @Setup
+    public void setUp() {
+        handler = new PlayerHandler(new NullConnection(), (Lobby) null);
+    }
+
+    @Benchmark
+    public void handleLine() {
+        handler.handleLine(line);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,20 @@
+package tictactoe;
+
+// Connection that keeps everything in its buffer, so benchmarks measure
+// encoding only. Callers clear the buffer themselves.
+final class NullConnection implements PlayerConnection {
+    private final OutputBuffer out = new OutputBuffer(256);
+
+    @Override
+    public OutputBuffer output() {
+        return out;
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public void close() {
+    }
+}
\ No newline at end of file
@@ -0,0 +1,63 @@
+package tictactoe;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+// Win/draw detection as GameSession uses it: place() checks the result of
+// every move. Each invocation plays a whole fixed game from an empty board.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class WinCheckBenchmark {
+    // A 3x3 game that ends in a draw, so every move is checked in full
+    private static final int[] DRAW_GAME = {0, 4, 8, 1, 7, 6, 2, 5, 3};
+
+    private Board compact;
+    private Board grid;
+    private int[] gridGame;
+    private int bitBoard;
+
+    @Setup
+    public void setUp() {
+        compact = Board.create(3, 3);
+        grid = Board.create(15, 5);
+
+        // 60 moves on a 15x15 board; a stride coprime to 225 visits
+        // distinct cells spread across the whole board
+        gridGame = new int[60];
+        for (int i = 0; i < gridGame.length; i++) {
+            gridGame[i] = (i * 37) % 225;
+        }
+
+        for (int i = 0; i < DRAW_GAME.length - 1; i++) {
+            bitBoard = BitBoard.place(bitBoard, DRAW_GAME[i], i % 2 == 0 ? 'X' : 'O');
+        }
+    }
+
+    @Benchmark
+    public void compactBoardGame(Blackhole bh) {
+        compact.reset();
+        for (int i = 0; i < DRAW_GAME.length; i++) {
+            int cell = DRAW_GAME[i];
+            bh.consume(compact.place(cell / 3, cell % 3, i % 2 == 0 ? 'X' : 'O'));
+        }
+    }
+
+    @Benchmark
+    public void gridBoardGame(Blackhole bh) {
+        grid.reset();
+        for (int i = 0; i < gridGame.length; i++) {
+            int cell = gridGame[i];
+            bh.consume(grid.place(cell / 15, cell % 15, i % 2 == 0 ? 'X' : 'O'));
+        }
+    }
+
+    @Benchmark
+    public char bitBoardResult() {
+        return BitBoard.result(bitBoard, 'X');
+    }
+}
\ No newline at end of file
@@ -0,0 +1,177 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertIterableEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+// Hammers one match's mailbox from many threads at once: moves from both
+// seats (in and out of turn, on taken cells, after the game is over) and
+// restart votes. Whatever order they land in, the match must apply them as
+// a single writer would:
+//
+//   - moves alternate X, O, X... from a fresh board, never on a taken cell
+//   - nothing is applied between GAME_OVER and RESET_GAME
+//   - the journal holds exactly the moves and results the players were sent
+class GameSessionStressTest {
+    private static final int THREADS = 8;
+    private static final int EVENTS_PER_THREAD = 20_000;
+    private static final int RESTART_PERCENT = 5;
+
+    @TempDir
+    Path journalDirectory;
+
+    @ParameterizedTest(name = "{0}x{0}, {1} in a row")
+    @CsvSource({"3, 3", "7, 4"})
+    void concurrentSubmitsApplyAsOneWriter(int size, int winLength) throws Exception {
+        MatchRegistry registry = new MatchRegistry(size, winLength);
+        GameJournal journal = GameJournal.open(journalDirectory);
+        registry.setJournal(journal);
+        Recorder x = new Recorder("x");
+        Recorder o = new Recorder("o");
+        GameSession session = registry.createMatch(x, o);
+        session.start();
+
+        CountDownLatch go = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            SplittableRandom random = new SplittableRandom(t);
+            Thread thread = new Thread(() -> {
+                try {
+                    go.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < EVENTS_PER_THREAD; i++) {
+                    Recorder player = random.nextBoolean() ? x : o;
+                    if (random.nextInt(100) < RESTART_PERCENT) {
+                        session.requestRestart(player);
+                    } else {
+                        session.makeMove(player, random.nextInt(size), random.nextInt(size));
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        go.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        // Every submit() has returned, so the mailbox has been drained
+        journal.shutdown();
+
+        List<String> sent = x.events();
+        int games = checkSingleWriter(sent, size);
+        assertTrue(games > 10, "only " + games + " games finished");
+        assertIterableEquals(sent, o.events(), "both seats see the same match");
+        assertIterableEquals(sent, journaled(session.getMatchId()), "journal matches what the players were sent");
+    }
+
+    // Returns the number of games that finished
+    private static int checkSingleWriter(List<String> events, int size) {
+        char toMove = 'X';
+        boolean over = false;
+        int games = 0;
+        Set<Integer> taken = new HashSet<>();
+        for (int i = 0; i < events.size(); i++) {
+            String[] event = events.get(i).split(" ");
+            switch (event[0]) {
+                case "MOVE" -> {
+                    assertFalse(over, "move applied after GAME_OVER, event " + i);
+                    assertEquals(toMove, event[1].charAt(0), "out of turn, event " + i);
+                    int cell = Integer.parseInt(event[2]);
+                    assertTrue(cell >= 0 && cell < size * size && taken.add(cell), "bad cell, event " + i);
+                    toMove = toMove == 'X' ? 'O' : 'X';
+                }
+                case "GAME_OVER" -> {
+                    assertFalse(over, "second GAME_OVER, event " + i);
+                    over = true;
+                    games++;
+                }
+                case "RESET" -> {
+                    assertTrue(over, "game reset while in progress, event " + i);
+                    over = false;
+                    toMove = 'X';
+                    taken.clear();
+                }
+                default -> throw new AssertionError("unexpected event " + events.get(i));
+            }
+        }
+        return games;
+    }
+
+    // The match's journal records in the same form as Recorder's events,
+    // checking each record's move count on the way
+    private List<String> journaled(long matchId) throws Exception {
+        List<String> events = new ArrayList<>();
+        int[] moves = {0};
+        boolean[] started = {false};
+        GameJournal.replay(journalDirectory, (type, mark, cell, aux, id, time) -> {
+            if (id != matchId) {
+                return;
+            }
+            switch (type) {
+                case GameJournal.START -> {
+                    if (started[0]) {
+                        events.add("RESET");
+                    }
+                    started[0] = true;
+                    moves[0] = 0;
+                }
+                case GameJournal.MOVE -> {
+                    assertEquals(++moves[0], aux, "journaled move number");
+                    events.add("MOVE " + mark + " " + cell);
+                }
+                case GameJournal.RESULT -> {
+                    assertEquals(moves[0], aux, "journaled moves played");
+                    events.add("GAME_OVER " + mark);
+                }
+                default -> {
+                }
+            }
+        });
+        return events;
+    }
+
+    // Seat that keeps the moves, results and resets the match sends it, in order
+    private static final class Recorder extends PlayerHandler {
+        private final List<String> events = Collections.synchronizedList(new ArrayList<>());
+
+        Recorder(String name) {
+            super(new NoConnection(), name);
+        }
+
+        List<String> events() {
+            synchronized (events) {
+                return new ArrayList<>(events);
+            }
+        }
+
+        @Override
+        public void sendMove(char moveMark, int row, int col, int boardSize) {
+            events.add("MOVE " + moveMark + " " + (row * boardSize + col));
+        }
+
+        @Override
+        public void sendGameOver(char result, String text) {
+            events.add("GAME_OVER " + result);
+        }
+
+        @Override
+        public void sendReset() {
+            events.add("RESET");
+        }
+    }
+}